@@ -0,0 +1,635 @@
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A trained POSTagger model frozen into integer-indexed arrays for fast tagging.
+ * Every tag (including the start state "#") is given an id and transitions become a dense matrix.
+ * Words are kept once in a sorted Vocabulary, each with a sparse list of the (tag id, score) pairs it was seen with.
+ * Unknown words get unseenObservationScore for every tag, unless an UnknownWordModel is added with withUnknownWords().
+ * The dense step of tagging can be handed to a MaxPlusKernel, which gets the transitions in its own layout.
+ * A CompiledModel is never modified after it is built.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class CompiledModel {
+    static final double NO_TRANSITION = Double.NEGATIVE_INFINITY; // marks transitions (and states) that cannot be reached
+
+    private final String[] tags; // tag id -> tag name
+    private final int startState; // tag id of "#"
+    private final double[][] transitions; // transitions[from][to], NO_TRANSITION where none was seen in training
+    private final boolean[] hasTransitions; // whether each state had a transitions map (even an empty one) when compiled
+    private final ObservationTable observations; // word -> observation score for every tag id
+    private final UnknownWordModel unknownWords; // scores of words not in observations, null for the flat unseen score
+    private volatile double[][] transitionProbabilities; // exp() of transitions, made the first time ForwardBackward needs it
+    private volatile KernelLayout kernelLayout; // transitions laid out for the last MaxPlusKernel used, made when first needed
+
+    /**
+     * Transitions laid out for one kernel
+     */
+    private static class KernelLayout {
+        final MaxPlusKernel kernel;
+        final double[] layout;
+
+        KernelLayout(MaxPlusKernel kernel, double[] layout) {
+            this.kernel = kernel;
+            this.layout = layout;
+        }
+    }
+
+    CompiledModel(String[] tags, int startState, double[][] transitions, boolean[] hasTransitions, ObservationTable observations) {
+        this(tags, startState, transitions, hasTransitions, observations, null);
+    }
+
+    private CompiledModel(String[] tags, int startState, double[][] transitions, boolean[] hasTransitions,
+                          ObservationTable observations, UnknownWordModel unknownWords) {
+        this.tags = tags;
+        this.startState = startState;
+        this.transitions = transitions;
+        this.hasTransitions = hasTransitions;
+        this.observations = observations;
+        this.unknownWords = unknownWords;
+    }
+
+    /**
+     * @param unknownWords model built for this compiled model's tag ids, null for the flat unseen score
+     * @return a model sharing every array with this one that scores unknown words with the given model
+     */
+    public CompiledModel withUnknownWords(UnknownWordModel unknownWords) {
+        return new CompiledModel(tags, startState, transitions, hasTransitions, observations, unknownWords);
+    }
+
+    /**
+     * @return the model scoring unknown words, null if they get the flat unseen score
+     */
+    public UnknownWordModel unknownWords() {
+        return unknownWords;
+    }
+
+    /**
+     * Where a compiled model looks up the observation scores of a word
+     */
+    interface ObservationTable {
+        /**
+         * @param word observation to look up
+         * @return handle of the word's entry for scores() and knownTags(), -1 if the word is unknown
+         */
+        int find(String word);
+
+        /**
+         * Same as find() for the word chars[start, start + length), without making a String
+         */
+        int find(char[] chars, int start, int length);
+
+        /**
+         * @param entry handle from find(), may be -1
+         * @param scratch array at least numTags long that may be filled and returned instead of a stored array
+         * @return observation score of the word for every tag id, unseen scores for unknown words
+         */
+        double[] scores(int entry, double[] scratch);
+
+        /**
+         * Tag dictionary lookup: the tag ids a word was seen with in training, in ascending order
+         *
+         * @param entry handle from find(), not -1
+         * @param tagIds array at least numTags long to write the tag ids into
+         * @return number of tag ids written
+         */
+        int knownTags(int entry, int[] tagIds);
+
+        default double[] scores(String word, double[] scratch) {
+            return scores(find(word), scratch);
+        }
+
+        /**
+         * Visits every (word, tag id, score) entry, with words in sorted order and tag ids ascending within a word
+         */
+        void forEachEntry(EntryVisitor visitor);
+    }
+
+    interface EntryVisitor {
+        void visit(String word, int tagId, double score);
+    }
+
+    /**
+     * Freezes a pair of trained maps (as produced by POSTagger.fileTraining() or supplied to its setters)
+     *
+     * @param observationsProbabilities state -> observation -> score
+     * @param transitionsProbabilities state -> next state -> score
+     * @param unseenObservationScore score given to an observation never seen with a state
+     * @return the compiled form of the model
+     */
+    public static CompiledModel compile(Map<String, Map<String, Double>> observationsProbabilities,
+                                        Map<String, Map<String, Double>> transitionsProbabilities,
+                                        double unseenObservationScore) {
+        // a model with only the start state, then every row is added to it
+        CompiledModel empty = new CompiledModel(new String[]{"#"}, 0, new double[][]{{NO_TRANSITION}}, new boolean[1],
+                sparseObservations(visitor -> {}, 1, unseenObservationScore));
+        return empty.withRows(observationsProbabilities, transitionsProbabilities, unseenObservationScore);
+    }
+
+    /**
+     * Builds a new compiled model that is the same as this one except for some replaced rows,
+     * without going back through the maps of the rows that stay the same
+     *
+     * @param observationRows state -> observation -> score for each state whose observations are replaced
+     * @param transitionRows state -> next state -> score for each state whose transitions are replaced
+     * @param unseenObservationScore score given to an observation never seen with a state
+     * @return the updated model (with the flat unseen score), this one is left unchanged
+     */
+    public CompiledModel withRows(Map<String, Map<String, Double>> observationRows,
+                                  Map<String, Map<String, Double>> transitionRows,
+                                  double unseenObservationScore) {
+        // keep every existing id, new states are numbered after them
+        Map<String, Integer> tagIds = new HashMap<>();
+        List<String> tagNames = new ArrayList<>();
+        for (String tag : tags) addTag(tag, tagIds, tagNames);
+        for (Map.Entry<String, Map<String, Double>> entry : transitionRows.entrySet()) {
+            addTag(entry.getKey(), tagIds, tagNames);
+            for (String nextState : entry.getValue().keySet()) addTag(nextState, tagIds, tagNames);
+        }
+        for (String state : observationRows.keySet()) addTag(state, tagIds, tagNames);
+        int numTags = tagNames.size();
+
+        // dense transition matrix
+        double[][] newTransitions = new double[numTags][];
+        for (int from = 0; from < numTags; from++) {
+            newTransitions[from] = new double[numTags];
+            Arrays.fill(newTransitions[from], NO_TRANSITION);
+            if (from < tags.length) System.arraycopy(transitions[from], 0, newTransitions[from], 0, tags.length);
+        }
+        boolean[] newHasTransitions = Arrays.copyOf(hasTransitions, numTags);
+        for (Map.Entry<String, Map<String, Double>> entry : transitionRows.entrySet()) {
+            int from = tagIds.get(entry.getKey());
+            Arrays.fill(newTransitions[from], NO_TRANSITION);
+            for (Map.Entry<String, Double> transition : entry.getValue().entrySet()) {
+                newTransitions[from][tagIds.get(transition.getKey())] = transition.getValue();
+            }
+            newHasTransitions[from] = true;
+        }
+
+        // observations of the states that stay the same, then the replaced rows
+        boolean[] replaced = new boolean[numTags];
+        for (String state : observationRows.keySet()) replaced[tagIds.get(state)] = true;
+        ObservationTable newObservations = sparseObservations(visitor -> {
+            observations.forEachEntry((word, tagId, score) -> {
+                if (!replaced[tagId]) visitor.visit(word, tagId, score);
+            });
+            for (Map.Entry<String, Map<String, Double>> entry : observationRows.entrySet()) {
+                int tagId = tagIds.get(entry.getKey());
+                for (Map.Entry<String, Double> observation : entry.getValue().entrySet()) {
+                    visitor.visit(observation.getKey(), tagId, observation.getValue());
+                }
+            }
+        }, numTags, unseenObservationScore);
+
+        return new CompiledModel(tagNames.toArray(new String[0]), startState, newTransitions, newHasTransitions, newObservations, null);
+    }
+
+    /**
+     * Helper method for withRows()
+     * Interns every word once, then lays out each word's (tag id, score) pairs one after another
+     *
+     * @param entries visits every (word, tag id, score) entry, in any order; called twice
+     */
+    private static ObservationTable sparseObservations(Consumer<EntryVisitor> entries, int numTags, double unseenObservationScore) {
+        Map<String, Integer> wordIds = new HashMap<>(); // counts of pairs per word, then ids (faster than binary search here)
+        entries.accept((word, tagId, score) -> wordIds.merge(word, 1, Integer::sum));
+        Vocabulary vocabulary = new Vocabulary(wordIds.keySet());
+        int[] entryStart = new int[vocabulary.size() + 1];
+        for (int word = 0; word < vocabulary.size(); word++) {
+            entryStart[word + 1] = entryStart[word] + wordIds.get(vocabulary.word(word));
+            wordIds.put(vocabulary.word(word), word);
+        }
+
+        int[] entryTags = new int[entryStart[vocabulary.size()]];
+        double[] entryScores = new double[entryTags.length];
+        int[] nextEntry = Arrays.copyOf(entryStart, vocabulary.size());
+        entries.accept((word, tagId, score) -> {
+            int entry = nextEntry[wordIds.get(word)]++;
+            entryTags[entry] = tagId;
+            entryScores[entry] = score;
+        });
+
+        // sort each word's few pairs by tag id
+        for (int word = 0; word < vocabulary.size(); word++) {
+            for (int entry = entryStart[word] + 1; entry < entryStart[word + 1]; entry++) {
+                int tagId = entryTags[entry];
+                double score = entryScores[entry];
+                int at = entry;
+                for (; at > entryStart[word] && entryTags[at - 1] > tagId; at--) {
+                    entryTags[at] = entryTags[at - 1];
+                    entryScores[at] = entryScores[at - 1];
+                }
+                entryTags[at] = tagId;
+                entryScores[at] = score;
+            }
+        }
+        return new SparseObservations(vocabulary, entryStart, entryTags, entryScores, numTags, unseenObservationScore);
+    }
+
+    /**
+     * Helper method for withRows()
+     * Gives a state the next free id if it doesn't have one yet
+     */
+    private static void addTag(String tag, Map<String, Integer> tagIds, List<String> tagNames) {
+        if (!tagIds.containsKey(tag)) {
+            tagIds.put(tag, tagNames.size());
+            tagNames.add(tag);
+        }
+    }
+
+    public int numTags() {
+        return tags.length;
+    }
+
+    public String tagName(int tagId) {
+        return tags[tagId];
+    }
+
+    /**
+     * @return score for moving from one tag id to another, NO_TRANSITION if never seen in training
+     */
+    public double transitionScore(int from, int to) {
+        return transitions[from][to];
+    }
+
+    /**
+     * @return whether the state had a transitions map when the model was compiled
+     */
+    public boolean hasTransitions(int tagId) {
+        return hasTransitions[tagId];
+    }
+
+    /**
+     * Visits every (word, tag id, score) observation in the model, with words in sorted order
+     */
+    public void forEachObservation(EntryVisitor visitor) {
+        observations.forEachEntry(visitor);
+    }
+
+    int startState() {
+        return startState;
+    }
+
+    /**
+     * @return transitions as probabilities rather than log-scores (0 where there is no transition),
+     *         shared with the model so must not be changed
+     */
+    double[][] transitionProbabilities() {
+        double[][] probabilities = transitionProbabilities;
+        if (probabilities == null) { // racing threads just make the same matrix
+            probabilities = new double[tags.length][tags.length];
+            for (int from = 0; from < tags.length; from++) {
+                for (int to = 0; to < tags.length; to++) probabilities[from][to] = Math.exp(transitions[from][to]);
+            }
+            transitionProbabilities = probabilities;
+        }
+        return probabilities;
+    }
+
+    /**
+     * @return transitions in the kernel's layout, shared with the model so must not be changed
+     */
+    private double[] kernelLayout(MaxPlusKernel kernel) {
+        KernelLayout kernelLayout = this.kernelLayout;
+        if (kernelLayout == null || kernelLayout.kernel != kernel) { // racing threads just make the same layout
+            kernelLayout = new KernelLayout(kernel, kernel.layout(transitions, tags.length));
+            this.kernelLayout = kernelLayout;
+        }
+        return kernelLayout.layout;
+    }
+
+    /**
+     * @return the transition scores out of one tag id, shared with the model so must not be changed
+     */
+    double[] transitionRow(int from) {
+        return transitions[from];
+    }
+
+    /**
+     * @param word lowercased observation
+     * @param scratch array at least numTags long that may be filled and returned
+     * @return observation score of the word for every tag id, shared with the model so must not be changed
+     */
+    double[] observationScores(String word, double[] scratch) {
+        return observationScores(word, observations.find(word), scratch);
+    }
+
+    /**
+     * @return handle of a lowercased observation's entry, -1 if it is unknown
+     */
+    int findObservation(String word) {
+        return observations.find(word);
+    }
+
+    /**
+     * @return handle of a token's entry, looked up without making a String, -1 if it is unknown
+     */
+    int findObservation(Tokenizer tokens, int token) {
+        return observations.find(tokens.chars(), tokens.start(token), tokens.length(token));
+    }
+
+    /**
+     * @param word lowercased observation
+     * @param entry handle of the word from findObservation(), may be -1
+     * @return observation score of the word for every tag id, shared with the model so must not be changed
+     */
+    double[] observationScores(String word, int entry, double[] scratch) {
+        if (entry < 0 && unknownWords != null) return unknownWords.scores(word);
+        return observations.scores(entry, scratch);
+    }
+
+    /**
+     * Same as observationScores(String, int, double[]) for a token, which is only made into a String for the unknown-word model
+     */
+    double[] observationScores(Tokenizer tokens, int token, int entry, double[] scratch) {
+        if (entry < 0 && unknownWords != null) return unknownWords.scores(tokens.token(token));
+        return observations.scores(entry, scratch);
+    }
+
+    /**
+     * @param entry handle from findObservation(), not -1
+     * @param tagIds array at least numTags long to write into
+     * @return number of tag ids the word was seen with in training, written to tagIds in ascending order
+     */
+    int knownTags(int entry, int[] tagIds) {
+        return observations.knownTags(entry, tagIds);
+    }
+
+    /**
+     * Viterbi tagging over the dense arrays.
+     * Gives the same output as POSTagger's map-based tagging (ties between equal scores go to the lowest tag id).
+     *
+     * @param sentence sentence with a space between every observation
+     * @param workspace reusable buffers, must not be shared between threads
+     * @return tags in sentence form, each followed by a space
+     */
+    public String tag(String sentence, Workspace workspace) {
+        return tag(sentence, workspace, Integer.MAX_VALUE, Double.POSITIVE_INFINITY, false);
+    }
+
+    /**
+     * Beam-pruned Viterbi tagging.
+     * After each observation only the best beamWidth states, and only states scoring within beamMargin of the best,
+     * are kept for the next step (states tied with the last one kept are kept too). Pruned states are skipped entirely,
+     * so each step costs about beamWidth * numTags instead of numTags * numTags, at some risk of losing the best path.
+     *
+     * @param sentence sentence with a space between every observation
+     * @param workspace reusable buffers, must not be shared between threads
+     * @param beamWidth most states kept after each observation, Integer.MAX_VALUE for no limit
+     * @param beamMargin largest log-score gap to the best state that is kept, Double.POSITIVE_INFINITY for no limit
+     * @param tagDictionary when true a known word is only given the tags it was seen with in training (unless none of them
+     *                      can be reached), so each step costs about numTags * (tags of the word); unknown words get every tag
+     * @return tags in sentence form, each followed by a space
+     */
+    public String tag(String sentence, Workspace workspace, int beamWidth, double beamMargin, boolean tagDictionary) {
+        return tag(sentence, workspace, beamWidth, beamMargin, tagDictionary, null);
+    }
+
+    /**
+     * Same as tag(String, Workspace, int, double, boolean), with every dense step run by a kernel
+     * (steps over a word's training tags stay scalar). The output is the same with or without one.
+     *
+     * @param kernel kernel for the dense steps, null for the scalar loop
+     */
+    public String tag(String sentence, Workspace workspace, int beamWidth, double beamMargin, boolean tagDictionary, MaxPlusKernel kernel) {
+        boolean pruning = beamWidth < tags.length || beamMargin != Double.POSITIVE_INFINITY;
+        Tokenizer tokens = workspace.tokenizer;
+        int length = tokens.tokenize(sentence, true);
+        int numTags = tags.length;
+        workspace.ensureCapacity(length, kernel == null ? numTags : kernel.paddedLength(numTags));
+        double[] layout = kernel == null ? null : kernelLayout(kernel);
+
+        double[] currScores = workspace.scoresA;
+        double[] nextScores = workspace.scoresB;
+        Arrays.fill(currScores, 0, numTags, NO_TRANSITION);
+        currScores[startState] = 0.;
+        int unknownTokens = 0;
+        long statesExpanded = 0;
+
+        for (int i = 0; i < length; i++) { // loop over each observation in the sentence
+            int entry = findObservation(tokens, i);
+            if (entry < 0) unknownTokens++;
+            double[] observationScores = observationScores(tokens, i, entry, workspace.observationScores);
+            int[] backPointers = workspace.backPointers[i];
+            Arrays.fill(nextScores, 0, numTags, NO_TRANSITION);
+
+            if (!tagDictionary || entry < 0) {
+                statesExpanded += denseStep(kernel, layout, currScores, nextScores, backPointers, observationScores, workspace.sortedScores);
+            }
+            else {
+                int numCandidates = this.observations.knownTags(entry, workspace.candidates);
+                int expanded = step(currScores, nextScores, backPointers, observationScores, workspace.candidates, numCandidates);
+                if (expanded == 0) {
+                    // none of the word's tags can be reached, fall back to every tag like exact tagging
+                    expanded = denseStep(kernel, layout, currScores, nextScores, backPointers, observationScores, workspace.sortedScores);
+                }
+                statesExpanded += expanded;
+            }
+
+            if (pruning) prune(nextScores, numTags, beamWidth, beamMargin, workspace.sortedScores);
+
+            // swap buffers, next becomes current
+            double[] temp = currScores;
+            currScores = nextScores;
+            nextScores = temp;
+        }
+
+        // find the final state, -1 if no path reached the end of the sentence
+        int finalState = -1;
+        double bestScore = NO_TRANSITION;
+        for (int state = 0; state < numTags && length > 0; state++) {
+            if (currScores[state] > bestScore) {
+                bestScore = currScores[state];
+                finalState = state;
+            }
+        }
+
+        // trace back into the path buffer, then format front to back
+        int[] path = workspace.path;
+        int currTag = finalState;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = currTag;
+            if (currTag >= 0) currTag = workspace.backPointers[i][currTag];
+        }
+        StringBuilder formattedTags = new StringBuilder(length * 4);
+        for (int i = 0; i < length; i++) {
+            formattedTags.append(path[i] >= 0 ? tags[path[i]] : "null").append(' '); // "null" matches map-based output for dead ends
+        }
+        workspace.unknownTokens = unknownTokens;
+        workspace.statesExpanded = statesExpanded;
+        return formattedTags.toString();
+    }
+
+    /**
+     * Helper method for tag()
+     * Moves the scores forward by one observation into every next state, with the kernel if there is one
+     */
+    private int denseStep(MaxPlusKernel kernel, double[] layout, double[] currScores, double[] nextScores, int[] backPointers,
+                          double[] observationScores, double[] scratch) {
+        if (kernel == null) return step(currScores, nextScores, backPointers, observationScores, null, tags.length);
+        return kernel.step(layout, tags.length, currScores, nextScores, backPointers, observationScores, scratch);
+    }
+
+    /**
+     * Helper method for tag()
+     * Moves the scores forward by one observation, only into the candidate next states
+     *
+     * @param candidates ascending tag ids of the next states to consider, null for every state
+     * @param numCandidates number of candidates (numTags when candidates is null)
+     * @return number of reachable current states that were extended, 0 if no candidate could be reached
+     */
+    private int step(double[] currScores, double[] nextScores, int[] backPointers, double[] observationScores,
+                     int[] candidates, int numCandidates) {
+        boolean reached = false;
+        int expanded = 0;
+        for (int currState = 0; currState < tags.length; currState++) { // loop over reachable current states
+            double currScore = currScores[currState];
+            if (currScore == NO_TRANSITION) continue;
+            expanded++;
+            double[] possibleTransitions = transitions[currState];
+            for (int candidate = 0; candidate < numCandidates; candidate++) { // loop over possible next states
+                int nextState = candidates == null ? candidate : candidates[candidate];
+                double transitionScore = possibleTransitions[nextState];
+                if (transitionScore == NO_TRANSITION) continue;
+                double nextScore = currScore + transitionScore + observationScores[nextState];
+                if (nextScore > nextScores[nextState]) {
+                    nextScores[nextState] = nextScore;
+                    backPointers[nextState] = currState;
+                    reached = true;
+                }
+            }
+        }
+        return reached ? expanded : 0;
+    }
+
+    /**
+     * Helper method for tag()
+     * Drops every state outside the beam by setting its score to NO_TRANSITION
+     *
+     * @param scores scores of the states after an observation, changed in place
+     * @param sortedScores scratch array at least numTags long
+     */
+    private static void prune(double[] scores, int numTags, int beamWidth, double beamMargin, double[] sortedScores) {
+        double bestScore = NO_TRANSITION;
+        for (int state = 0; state < numTags; state++) bestScore = Math.max(bestScore, scores[state]);
+        double threshold = bestScore - beamMargin;
+        if (beamWidth < numTags) { // the beamWidth-th best score also sets a threshold
+            System.arraycopy(scores, 0, sortedScores, 0, numTags);
+            Arrays.sort(sortedScores, 0, numTags);
+            threshold = Math.max(threshold, sortedScores[numTags - beamWidth]);
+        }
+        for (int state = 0; state < numTags; state++) {
+            if (scores[state] < threshold) scores[state] = NO_TRANSITION;
+        }
+    }
+
+    /**
+     * In-memory observation scores: a Vocabulary plus every word's (tag id, score) pairs in flat arrays
+     */
+    private static class SparseObservations implements ObservationTable {
+        private final Vocabulary vocabulary;
+        private final int[] entryStart; // pairs of word id w are at entryStart[w] up to entryStart[w + 1]
+        private final int[] entryTags;
+        private final double[] entryScores;
+        private final double[] unseenObservations;
+
+        SparseObservations(Vocabulary vocabulary, int[] entryStart, int[] entryTags, double[] entryScores,
+                           int numTags, double unseenObservationScore) {
+            this.vocabulary = vocabulary;
+            this.entryStart = entryStart;
+            this.entryTags = entryTags;
+            this.entryScores = entryScores;
+            this.unseenObservations = new double[numTags];
+            Arrays.fill(unseenObservations, unseenObservationScore);
+        }
+
+        public int find(String word) {
+            return vocabulary.id(word);
+        }
+
+        public int find(char[] chars, int start, int length) {
+            return vocabulary.id(chars, start, length);
+        }
+
+        public double[] scores(int id, double[] scratch) {
+            if (id < 0) return unseenObservations;
+            System.arraycopy(unseenObservations, 0, scratch, 0, unseenObservations.length);
+            for (int entry = entryStart[id]; entry < entryStart[id + 1]; entry++) scratch[entryTags[entry]] = entryScores[entry];
+            return scratch;
+        }
+
+        public int knownTags(int id, int[] tagIds) {
+            System.arraycopy(entryTags, entryStart[id], tagIds, 0, entryStart[id + 1] - entryStart[id]);
+            return entryStart[id + 1] - entryStart[id];
+        }
+
+        public void forEachEntry(EntryVisitor visitor) {
+            for (int id = 0; id < vocabulary.size(); id++) {
+                for (int entry = entryStart[id]; entry < entryStart[id + 1]; entry++) {
+                    visitor.visit(vocabulary.word(id), entryTags[entry], entryScores[entry]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Score, backpointer and path buffers reused across calls to tag()
+     * Only grows when a longer sentence or bigger model comes along.
+     */
+    public static class Workspace {
+        private double[] scoresA = new double[0];
+        private double[] scoresB = new double[0];
+        private int[][] backPointers = new int[0][];
+        private double[] observationScores = new double[0];
+        private int[] candidates = new int[0];
+        private double[] sortedScores = new double[0];
+        private int[] path = new int[0];
+        private final Tokenizer tokenizer = new Tokenizer();
+        private int unknownTokens; // counts from the last sentence tagged, for TaggerMetrics
+        private long statesExpanded;
+
+        /**
+         * @return number of observations in the last sentence tagged with this workspace
+         */
+        int numTokens() {
+            return tokenizer.numTokens();
+        }
+
+        /**
+         * @return observations of the last sentence that weren't in the vocabulary
+         */
+        int unknownTokens() {
+            return unknownTokens;
+        }
+
+        /**
+         * @return reachable states extended while tagging the last sentence
+         */
+        long statesExpanded() {
+            return statesExpanded;
+        }
+
+        /**
+         * @param numTags length of each score and backpointer array, padded for a kernel if there is one
+         */
+        void ensureCapacity(int length, int numTags) {
+            if (scoresA.length < numTags) {
+                scoresA = new double[numTags];
+                scoresB = new double[numTags];
+                observationScores = new double[numTags];
+                candidates = new int[numTags];
+                sortedScores = new double[numTags];
+                backPointers = new int[0][]; // rows are too short now, rebuild below
+            }
+            if (backPointers.length < length) {
+                int rows = Math.max(length, backPointers.length * 2);
+                int[][] grown = Arrays.copyOf(backPointers, rows);
+                for (int i = backPointers.length; i < rows; i++) grown[i] = new int[scoresA.length];
+                backPointers = grown;
+                path = new int[rows];
+            }
+        }
+    }
+}
\ No newline at end of file
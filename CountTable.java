@@ -0,0 +1,427 @@
+import java.util.*;
+
+/**
+ * Raw training counts kept in primitive tables, so one shard of a corpus can be counted without boxing.
+ * Tags are numbered as they are first seen (the start state "#" is always 0).
+ * Tables from different shards are combined with merge() before being turned into probabilities,
+ * and a shard can be taken back out with subtract() (as cross-validation does with its held-out fold).
+ * Tag trigrams are counted too, for the second-order transitions of a TrigramModel.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class CountTable {
+    private final Map<String, Integer> tagIds = new HashMap<>(); // tag name -> tag id
+    private final List<String> tagNames = new ArrayList<>(); // tag id -> tag name
+    private int[][] transitionCounts = new int[16][16]; // transitionCounts[from][to], grows with the number of tags
+    private int[][][] trigramCounts = new int[16][16][]; // trigramCounts[first][second][next], a row only once the pair is seen
+    private final Map<String, int[]> observationCounts = new HashMap<>(); // word -> (tag id, count) pairs, one after another
+
+    public CountTable() {
+        tagId("#"); // start state
+    }
+
+    /**
+     * Gets a tag's id, giving it the next free one the first time it is seen
+     */
+    private int tagId(String tag) {
+        Integer id = tagIds.get(tag);
+        if (id == null) {
+            id = tagNames.size();
+            tagIds.put(tag, id);
+            tagNames.add(tag);
+            if (id >= transitionCounts.length) { // out of room, double the matrix
+                int[][] grown = new int[transitionCounts.length * 2][transitionCounts.length * 2];
+                for (int i = 0; i < transitionCounts.length; i++) {
+                    System.arraycopy(transitionCounts[i], 0, grown[i], 0, transitionCounts.length);
+                }
+                transitionCounts = grown;
+                int[][][] grownTrigrams = new int[grown.length][grown.length][];
+                for (int i = 0; i < trigramCounts.length; i++) {
+                    System.arraycopy(trigramCounts[i], 0, grownTrigrams[i], 0, trigramCounts.length);
+                }
+                trigramCounts = grownTrigrams;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Helper method for addSentence() and merge()
+     * Adds to the count of a word being observed with a tag
+     */
+    private void addObservation(String observation, int tagId, int count) {
+        int[] counts = observationCounts.get(observation);
+        if (counts != null) {
+            for (int i = 0; i < counts.length; i += 2) {
+                if (counts[i] == tagId) {
+                    counts[i + 1] += count;
+                    return;
+                }
+            }
+        }
+        // first time this word is seen with this tag, most words only ever get one or two pairs
+        counts = counts == null ? new int[2] : Arrays.copyOf(counts, counts.length + 2);
+        counts[counts.length - 2] = tagId;
+        counts[counts.length - 1] = count;
+        observationCounts.put(observation, counts);
+    }
+
+    /**
+     * Helper method for addSentence(), addTrigrams() and merge()
+     * Adds to the count of a tag trigram, making room in its pair's row first if needed
+     */
+    private void addTrigram(int first, int second, int next, int count) {
+        int[] row = trigramCounts[first][second];
+        if (row == null || row.length <= next) {
+            row = row == null ? new int[trigramCounts.length] : Arrays.copyOf(row, trigramCounts.length);
+            trigramCounts[first][second] = row;
+        }
+        row[next] += count;
+    }
+
+    /**
+     * Counts one training sentence, the same way POSTagger.updateCounts() does
+     *
+     * @param observations a sentence in array form (ends with period)
+     * @param tags a sentence of tags in array form (ends with period)
+     * @return false if the sentence was skipped for not matching its tags
+     */
+    public boolean addSentence(String[] observations, String[] tags) {
+        if (observations.length != tags.length) {
+            System.out.println("non-matching number of observations and tags");
+            return false;
+        }
+        int prevPrevTag = 0; // a sentence starts with two start states
+        int prevTag = 0; // default start state
+        for (int i = 0; i < tags.length; i++) {
+            int currTag = tagId(tags[i]);
+            addObservation(observations[i], currTag, 1);
+            transitionCounts[prevTag][currTag]++;
+            addTrigram(prevPrevTag, prevTag, currTag, 1);
+            prevPrevTag = prevTag;
+            prevTag = currTag;
+        }
+        return true;
+    }
+
+    /**
+     * Counts only the tag trigrams of a training sentence, for when its other counts come from addCounts().
+     * Only call it for sentences whose other counts were kept, or the trigrams drift from them.
+     *
+     * @param tags a sentence of tags in array form (ends with period)
+     */
+    public void addTrigrams(String[] tags) {
+        int prevPrevTag = 0;
+        int prevTag = 0;
+        for (String tag : tags) {
+            int currTag = tagId(tag);
+            addTrigram(prevPrevTag, prevTag, currTag, 1);
+            prevPrevTag = prevTag;
+            prevTag = currTag;
+        }
+    }
+
+    /**
+     * Adds the counts from count maps in the form fileTraining() uses before normalizing
+     *
+     * @param observationCounts state -> observation -> count, may include "countsTotal"
+     * @param transitionCounts state -> next state -> count, may include "countsTotal"
+     */
+    public void addCounts(Map<String, Map<String, Double>> observationCounts,
+                          Map<String, Map<String, Double>> transitionCounts) {
+        for (Map.Entry<String, Map<String, Double>> entry : observationCounts.entrySet()) {
+            int tagId = tagId(entry.getKey());
+            for (Map.Entry<String, Double> count : entry.getValue().entrySet()) {
+                if (!count.getKey().equals("countsTotal")) addObservation(count.getKey(), tagId, count.getValue().intValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, Double>> entry : transitionCounts.entrySet()) {
+            int from = tagId(entry.getKey());
+            for (Map.Entry<String, Double> count : entry.getValue().entrySet()) {
+                if (!count.getKey().equals("countsTotal")) this.transitionCounts[from][tagId(count.getKey())] += count.getValue().intValue();
+            }
+        }
+    }
+
+    /**
+     * Adds every count from another table into this one
+     *
+     * @param other table counted from another shard, left unchanged
+     */
+    public void merge(CountTable other) {
+        add(other, 1);
+    }
+
+    /**
+     * Takes every count of another table back out of this one, undoing merge()
+     *
+     * @param other table that was merged into this one (or counted from part of the same corpus), left unchanged
+     */
+    public void subtract(CountTable other) {
+        add(other, -1);
+    }
+
+    /**
+     * @return a new table with the same counts as this one
+     */
+    public CountTable copy() {
+        CountTable copy = new CountTable();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Helper method for merge() and subtract()
+     * Adds each count of another table to this one, multiplied by sign.
+     * Counts taken down to 0 are ignored when normalizing, so a subtracted table normalizes as if it was never counted.
+     */
+    private void add(CountTable other, int sign) {
+        // map the other table's tag ids onto this table's
+        int[] idMap = new int[other.tagNames.size()];
+        for (int i = 0; i < idMap.length; i++) idMap[i] = tagId(other.tagNames.get(i));
+
+        for (int from = 0; from < idMap.length; from++) {
+            for (int to = 0; to < idMap.length; to++) {
+                transitionCounts[idMap[from]][idMap[to]] += sign * other.transitionCounts[from][to];
+            }
+        }
+        for (int first = 0; first < idMap.length; first++) {
+            for (int second = 0; second < idMap.length; second++) {
+                int[] row = other.trigramCounts[first][second];
+                if (row == null) continue;
+                for (int next = 0; next < row.length; next++) {
+                    if (row[next] != 0) addTrigram(idMap[first], idMap[second], idMap[next], sign * row[next]);
+                }
+            }
+        }
+        for (Map.Entry<String, int[]> entry : other.observationCounts.entrySet()) {
+            int[] counts = entry.getValue();
+            for (int i = 0; i < counts.length; i += 2) addObservation(entry.getKey(), idMap[counts[i]], sign * counts[i + 1]);
+        }
+    }
+
+    interface WordVisitor {
+        void visit(String word, String[] tags, int[] counts);
+    }
+
+    /**
+     * Visits every word with the tags it was seen with and how many times (leaving out counts subtracted down to 0)
+     */
+    public void forEachWord(WordVisitor visitor) {
+        for (Map.Entry<String, int[]> entry : observationCounts.entrySet()) {
+            int[] pairs = entry.getValue();
+            int numTags = 0;
+            for (int i = 1; i < pairs.length; i += 2) {
+                if (pairs[i] != 0) numTags++;
+            }
+            if (numTags == 0) continue;
+            String[] tags = new String[numTags];
+            int[] counts = new int[numTags];
+            for (int i = 0, tag = 0; i < pairs.length; i += 2) {
+                if (pairs[i + 1] == 0) continue;
+                tags[tag] = tagNames.get(pairs[i]);
+                counts[tag++] = pairs[i + 1];
+            }
+            visitor.visit(entry.getKey(), tags, counts);
+        }
+    }
+
+    /**
+     * Normalizes the transition counts into log-probabilities, as POSTagger.fileTraining() does
+     *
+     * @return state -> next state -> log-probability, always containing the start state
+     */
+    public Map<String, Map<String, Double>> transitionsProbabilities() {
+        return transitionsProbabilities(null);
+    }
+
+    /**
+     * Normalizes the transition counts of some states only
+     *
+     * @param states states whose rows are wanted, null for all
+     * @return state -> next state -> log-probability for the wanted states that have transitions (and "#")
+     */
+    public Map<String, Map<String, Double>> transitionsProbabilities(Set<String> states) {
+        return transitionsProbabilities(states, 0);
+    }
+
+    /**
+     * Normalizes the transition counts with add-smoothing (Lidstone), so transitions never seen in training
+     * are still possible. Every tag that was transitioned into gets smoothing added to its count from each state.
+     *
+     * @param smoothing count added to every transition, 0 for the same probabilities as fileTraining()
+     * @return state -> next state -> log-probability, always containing the start state
+     */
+    public Map<String, Map<String, Double>> transitionsProbabilities(double smoothing) {
+        return transitionsProbabilities(null, smoothing);
+    }
+
+    /**
+     * Helper method for the transitionsProbabilities() methods
+     */
+    private Map<String, Map<String, Double>> transitionsProbabilities(Set<String> states, double smoothing) {
+        boolean[] seen = new boolean[tagNames.size()]; // tags that were transitioned into
+        int numSeen = 0;
+        for (int to = 0; to < seen.length; to++) {
+            for (int from = 0; from < seen.length && !seen[to]; from++) seen[to] = transitionCounts[from][to] != 0;
+            if (seen[to]) numSeen++;
+        }
+
+        Map<String, Map<String, Double>> transitions = new HashMap<>();
+        for (int from = 0; from < tagNames.size(); from++) {
+            if (states != null && !states.contains(tagNames.get(from))) continue;
+            long total = transitionTotal(from);
+            if (total == 0 && from != 0) continue; // only states that were transitioned out of (and "#") get a map
+            Map<String, Double> stateTransitions = new HashMap<>();
+            for (int to = 0; to < tagNames.size(); to++) {
+                int count = transitionCounts[from][to];
+                if (count != 0 || (smoothing > 0 && seen[to])) {
+                    stateTransitions.put(tagNames.get(to), Math.log((count + smoothing) / (total + smoothing * numSeen)));
+                }
+            }
+            transitions.put(tagNames.get(from), stateTransitions);
+        }
+        return transitions;
+    }
+
+    /**
+     * Normalizes the observation counts into log-probabilities, as POSTagger.fileTraining() does.
+     * Like fileTraining(), a state that never transitions anywhere keeps its raw counts and "countsTotal".
+     *
+     * @return state -> observation -> log-probability
+     */
+    public Map<String, Map<String, Double>> observationsProbabilities() {
+        return observationsProbabilities(null);
+    }
+
+    /**
+     * Normalizes the observation counts of some states only
+     *
+     * @param states states whose rows are wanted, null for all
+     * @return state -> observation -> log-probability for the wanted states that have observations
+     */
+    public Map<String, Map<String, Double>> observationsProbabilities(Set<String> states) {
+        boolean[] wanted = new boolean[tagNames.size()];
+        for (int tag = 0; tag < wanted.length; tag++) wanted[tag] = states == null || states.contains(tagNames.get(tag));
+        long[] totals = new long[tagNames.size()];
+        boolean[] normalized = new boolean[tagNames.size()]; // fileTraining() only normalizes states with transitions
+        for (int tag = 0; tag < normalized.length; tag++) normalized[tag] = transitionTotal(tag) != 0;
+        for (int[] counts : observationCounts.values()) {
+            for (int i = 0; i < counts.length; i += 2) totals[counts[i]] += counts[i + 1];
+        }
+
+        Map<String, Map<String, Double>> observations = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : observationCounts.entrySet()) {
+            int[] counts = entry.getValue();
+            for (int i = 0; i < counts.length; i += 2) {
+                int tag = counts[i];
+                if (counts[i + 1] == 0 || !wanted[tag]) continue;
+                Map<String, Double> stateObservations = observations.computeIfAbsent(tagNames.get(tag), key -> new HashMap<>());
+                if (!normalized[tag]) stateObservations.put(entry.getKey(), (double) counts[i + 1]);
+                else stateObservations.put(entry.getKey(), Math.log((double) counts[i + 1] / totals[tag]));
+            }
+        }
+        for (int tag = 0; tag < tagNames.size(); tag++) { // un-normalized states keep their total
+            if (totals[tag] != 0 && !normalized[tag] && wanted[tag]) {
+                observations.get(tagNames.get(tag)).put("countsTotal", (double) totals[tag]);
+            }
+        }
+        return observations;
+    }
+
+    /**
+     * Second-order transition scores: the trigram estimate P(next | first, second) interpolated with the bigram
+     * P(next | second) and unigram P(next) estimates, with weights found by deleted interpolation.
+     * Only pairs (second, next) seen in training get a score, which keeps the state-pair lattice small.
+     *
+     * @param tags tag names to index the scores by, "#" first
+     * @return log-scores indexed (first * tags.length + second) * tags.length + next,
+     *         negative infinity where second was never followed by next
+     */
+    public double[] trigramTransitions(String[] tags) {
+        int numTags = tags.length;
+        int[] ids = new int[numTags]; // this table's id of each tag, -1 if never counted
+        for (int tag = 0; tag < numTags; tag++) ids[tag] = tagIds.getOrDefault(tags[tag], -1);
+
+        // tag counts, and the number of times each tag (and each pair) was followed by something
+        long[] unigrams = new long[tagNames.size()];
+        long[] bigramTotals = new long[tagNames.size()];
+        long totalTags = 0;
+        for (int from = 0; from < tagNames.size(); from++) {
+            for (int to = 0; to < tagNames.size(); to++) {
+                unigrams[to] += transitionCounts[from][to];
+                bigramTotals[from] += transitionCounts[from][to];
+                totalTags += transitionCounts[from][to];
+            }
+        }
+        long[][] trigramTotals = new long[tagNames.size()][tagNames.size()];
+        for (int first = 0; first < tagNames.size(); first++) {
+            for (int second = 0; second < tagNames.size(); second++) {
+                int[] row = trigramCounts[first][second];
+                if (row != null) for (int count : row) trigramTotals[first][second] += count;
+            }
+        }
+
+        double[] weights = interpolationWeights(unigrams, bigramTotals, trigramTotals, totalTags);
+        double[] transitions = new double[numTags * numTags * numTags];
+        Arrays.fill(transitions, Double.NEGATIVE_INFINITY);
+        for (int first = 0; first < numTags; first++) {
+            for (int second = 0; second < numTags; second++) {
+                int a = ids[first];
+                int b = ids[second];
+                if (b < 0 || bigramTotals[b] == 0) continue; // nothing ever followed the second tag
+                int[] row = a < 0 ? null : trigramCounts[a][b];
+                for (int next = 0; next < numTags; next++) {
+                    int c = ids[next];
+                    if (c < 0 || transitionCounts[b][c] == 0) continue; // unreachable pair
+                    double trigram = row == null || c >= row.length ? 0 : (double) row[c] / trigramTotals[a][b];
+                    double bigram = (double) transitionCounts[b][c] / bigramTotals[b];
+                    double unigram = (double) unigrams[c] / totalTags;
+                    transitions[(first * numTags + second) * numTags + next] =
+                            Math.log(weights[2] * trigram + weights[1] * bigram + weights[0] * unigram);
+                }
+            }
+        }
+        return transitions;
+    }
+
+    /**
+     * Helper method for trigramTransitions()
+     * Deleted interpolation (Brants, 2000): every trigram's count goes to whichever estimate predicts it best
+     * with that one occurrence left out
+     *
+     * @return weights of the unigram, bigram and trigram estimates, summing to 1
+     */
+    private double[] interpolationWeights(long[] unigrams, long[] bigramTotals, long[][] trigramTotals, long totalTags) {
+        double[] weights = new double[3];
+        for (int first = 0; first < tagNames.size(); first++) {
+            for (int second = 0; second < tagNames.size(); second++) {
+                int[] row = trigramCounts[first][second];
+                if (row == null) continue;
+                for (int next = 0; next < row.length; next++) {
+                    if (row[next] == 0) continue;
+                    double trigram = trigramTotals[first][second] > 1 ? (row[next] - 1.) / (trigramTotals[first][second] - 1) : 0;
+                    double bigram = bigramTotals[second] > 1 ? (transitionCounts[second][next] - 1.) / (bigramTotals[second] - 1) : 0;
+                    double unigram = totalTags > 1 ? (unigrams[next] - 1.) / (totalTags - 1) : 0;
+                    if (trigram >= bigram && trigram >= unigram) weights[2] += row[next];
+                    else if (bigram >= unigram) weights[1] += row[next];
+                    else weights[0] += row[next];
+                }
+            }
+        }
+        double total = weights[0] + weights[1] + weights[2];
+        if (total == 0) return new double[]{0, 1, 0}; // nothing counted, plain bigram
+        for (int i = 0; i < 3; i++) weights[i] /= total;
+        return weights;
+    }
+
+    /**
+     * @return number of transitions counted out of a state
+     */
+    private long transitionTotal(int from) {
+        long total = 0;
+        for (int to = 0; to < tagNames.size(); to++) total += transitionCounts[from][to];
+        return total;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,216 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * K-fold cross-validation of the bigram tagger over a training corpus, for tuning its smoothing settings.
+ * Each fold is counted once into its own CountTable and the folds are merged into one table for the whole corpus.
+ * The training counts of fold k are then that table with fold k subtracted, so nothing is ever recounted,
+ * and the observation probabilities of each fold are shared by every setting tried on it.
+ * sweep() tries a grid of transition smoothing and unseen observation scores, one task per setting and fold,
+ * spread over a thread pool.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class CrossValidation {
+    private final List<String> sentences;
+    private final List<String> tagLines;
+    private final int folds;
+    private final int[] foldStarts; // fold k is lines foldStarts[k] up to foldStarts[k + 1]
+    private final CountTable[] trainingCounts; // every fold's counts but fold k
+    private final List<Map<String, Map<String, Double>>> observations = new ArrayList<>(); // normalized from trainingCounts[k]
+    private final double countingSeconds; // time taken to count and prepare the folds
+
+    /**
+     * Counts and prepares every fold
+     *
+     * @param sentences formatted sentences
+     * @param tagLines formatted tags for each sentence
+     * @param folds number of folds, at least 2
+     * @param threads number of threads to count the folds with
+     */
+    public CrossValidation(List<String> sentences, List<String> tagLines, int folds, int threads) {
+        long start = System.nanoTime();
+        this.sentences = sentences;
+        this.tagLines = tagLines;
+        this.folds = folds;
+        int lines = Math.min(sentences.size(), tagLines.size());
+        foldStarts = new int[folds + 1];
+        for (int fold = 0; fold <= folds; fold++) foldStarts[fold] = (int) ((long) lines * fold / folds);
+
+        // count each fold once
+        CountTable[] foldCounts = run(threads, folds, fold -> {
+            CountTable counts = new CountTable();
+            Tokenizer sentenceTokens = new Tokenizer();
+            Tokenizer tagTokens = new Tokenizer();
+            for (int line = foldStarts[fold]; line < foldStarts[fold + 1]; line++) {
+                sentenceTokens.tokenize(sentences.get(line), true);
+                tagTokens.tokenize(tagLines.get(line), false);
+                counts.addSentence(sentenceTokens.tokens(), tagTokens.tokens());
+            }
+            return counts;
+        }).toArray(new CountTable[0]);
+        CountTable totalCounts = new CountTable();
+        for (CountTable counts : foldCounts) totalCounts.merge(counts);
+
+        // take each fold back out of the total, and normalize its observations for every setting to share
+        trainingCounts = run(threads, folds, fold -> {
+            CountTable counts = totalCounts.copy();
+            counts.subtract(foldCounts[fold]);
+            return counts;
+        }).toArray(new CountTable[0]);
+        observations.addAll(run(threads, folds, fold -> trainingCounts[fold].observationsProbabilities()));
+        countingSeconds = (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Runs a task for each index on a new thread pool
+     *
+     * @return the result for each index, in order
+     */
+    private static <T> List<T> run(int threads, int tasks, IntFunction<T> task) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                int index = i;
+                futures.add(pool.submit(() -> task.apply(index)));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("cross-validation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("cross-validation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Accuracy of one setting over every fold
+     */
+    public static class Result {
+        public final double smoothing;
+        public final double unseenObservationScore;
+        public final long correctTags;
+        public final long totalTags;
+        public final double seconds; // training and tagging time of this setting, summed over its folds
+
+        Result(double smoothing, double unseenObservationScore, long correctTags, long totalTags, double seconds) {
+            this.smoothing = smoothing;
+            this.unseenObservationScore = unseenObservationScore;
+            this.correctTags = correctTags;
+            this.totalTags = totalTags;
+            this.seconds = seconds;
+        }
+
+        public double accuracy() {
+            return totalTags == 0 ? 0 : (double) correctTags / totalTags;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("smoothing %s, unseen score %.3f: %.2f%% correct (%d of %d tags), %.2f sec",
+                    smoothing, unseenObservationScore, 100 * accuracy(), correctTags, totalTags, seconds);
+        }
+    }
+
+    /**
+     * Cross-validates one setting
+     *
+     * @param smoothing count added to every transition (see CountTable.transitionsProbabilities(double))
+     * @param unseenObservationScore score of a word never seen with a tag
+     */
+    public Result evaluate(double smoothing, double unseenObservationScore) {
+        return sweep(new double[]{smoothing}, new double[]{unseenObservationScore}, 1).get(0);
+    }
+
+    /**
+     * Cross-validates every combination of the settings, as one task per setting and fold on a thread pool
+     *
+     * @param smoothings counts added to every transition
+     * @param unseenObservationScores scores of a word never seen with a tag
+     * @param threads number of threads to run the tasks on
+     * @return the result of every combination, most accurate first
+     */
+    public List<Result> sweep(double[] smoothings, double[] unseenObservationScores, int threads) {
+        int settings = smoothings.length * unseenObservationScores.length;
+        List<long[]> foldResults = run(threads, settings * folds, task -> { // {correct tags, total tags, nanoseconds}
+            long start = System.nanoTime();
+            int fold = task % folds;
+            double smoothing = smoothings[task / folds / unseenObservationScores.length];
+            double unseenObservationScore = unseenObservationScores[task / folds % unseenObservationScores.length];
+            CompiledModel model = CompiledModel.compile(observations.get(fold),
+                    trainingCounts[fold].transitionsProbabilities(smoothing), unseenObservationScore);
+
+            CompiledModel.Workspace workspace = new CompiledModel.Workspace();
+            long correct = 0;
+            long total = 0;
+            for (int line = foldStarts[fold]; line < foldStarts[fold + 1]; line++) {
+                String[] computed = model.tag(sentences.get(line), workspace).split(" ");
+                String[] expected = tagLines.get(line).split(" ");
+                for (int i = 0; i < expected.length; i++) {
+                    if (i < computed.length && computed[i].equals(expected[i])) correct++;
+                }
+                total += expected.length;
+            }
+            return new long[]{correct, total, System.nanoTime() - start};
+        });
+
+        // add up the folds of each setting
+        List<Result> results = new ArrayList<>();
+        for (int setting = 0; setting < settings; setting++) {
+            long correct = 0;
+            long total = 0;
+            long nanos = 0;
+            for (int fold = 0; fold < folds; fold++) {
+                long[] foldResult = foldResults.get(setting * folds + fold);
+                correct += foldResult[0];
+                total += foldResult[1];
+                nanos += foldResult[2];
+            }
+            results.add(new Result(smoothings[setting / unseenObservationScores.length],
+                    unseenObservationScores[setting % unseenObservationScores.length], correct, total, nanos / 1e9));
+        }
+        results.sort((a, b) -> Double.compare(b.accuracy(), a.accuracy()));
+        return results;
+    }
+
+    /**
+     * @return time taken to count the folds and take each out of the total, in seconds
+     */
+    public double getCountingSeconds() {
+        return countingSeconds;
+    }
+
+    /**
+     * Sweeps a default grid over a training corpus and prints every setting, best first
+     *
+     * @param args sentences file, tags file, and optionally the number of folds (5) and threads (all cores)
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java CrossValidation sentences tags [folds] [threads]");
+            return;
+        }
+        int folds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        try {
+            CrossValidation crossValidation = new CrossValidation(Evaluation.readLines(args[0]), Evaluation.readLines(args[1]), folds, threads);
+            System.out.printf("Counted %d folds in %.2f sec%n", folds, crossValidation.getCountingSeconds());
+            long start = System.nanoTime();
+            List<Result> results = crossValidation.sweep(new double[]{0, 0.001, 0.01, 0.1, 1},
+                    new double[]{-10, -12.5, -15.625, -18.75, -21.875}, threads);
+            System.out.printf("Swept %d settings on %d thread(s) in %.2f sec%n", results.size(), threads, (System.nanoTime() - start) / 1e9);
+            for (Result result : results) System.out.println(result);
+            System.out.println("Best: " + results.get(0));
+        } catch (IOException e) {
+            System.out.println("Error reading files: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Evaluation of a trained POSTagger on a pair of formatted test files, tagged in parallel.
+ * The test lines are split into one contiguous chunk per thread; each thread keeps its own confusion matrix,
+ * correct line count and per-sentence latencies, and these are merged when every thread is done.
+ * The result has line and tag accuracy, precision and recall for each tag, the confusion matrix,
+ * and the speed it was all tagged at, so every accuracy change comes with its cost.
+ * Run main() to train on one pair of files and evaluate on another from the command line.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class Evaluation {
+    static final String NO_TAG = "null"; // what the tagger gives a dead end, also used for tags missing from the output
+
+    private final String[] tagNames; // row and column labels of the confusion matrix
+    private final long[][] confusion; // [expected tag][computed tag] -> count
+    private final int lines;
+    private final int correctLines;
+    private final int threads;
+    private final double seconds; // wall time of the whole evaluation
+    private final long[] latencies; // nanoseconds to tag each sentence, sorted
+
+    private Evaluation(String[] tagNames, long[][] confusion, int lines, int correctLines, int threads,
+                       double seconds, long[] latencies) {
+        this.tagNames = tagNames;
+        this.confusion = confusion;
+        this.lines = lines;
+        this.correctLines = correctLines;
+        this.threads = threads;
+        this.seconds = seconds;
+        this.latencies = latencies;
+    }
+
+    /**
+     * Tags every line of a test file in parallel and compares it with the expected tags
+     *
+     * @param tagger trained tagger, tagged with as it is currently set up
+     * @param sentencesFileName name or path of file containing formatted sentences
+     * @param tagsFileName name or path of file containing the correct tags
+     * @param threads number of threads to tag with, at least 1
+     * @return the merged results
+     */
+    public static Evaluation evaluate(POSTagger tagger, String sentencesFileName, String tagsFileName, int threads) throws IOException {
+        List<String> sentences = readLines(sentencesFileName);
+        List<String> expectedTags = readLines(tagsFileName);
+        int lines = Math.min(sentences.size(), expectedTags.size());
+
+        // every tag the tagger or the test file could give, so the threads can count into arrays
+        Map<String, Integer> tagIds = new LinkedHashMap<>();
+        CompiledModel model = tagger.compile();
+        for (int tag = 0; tag < model.numTags(); tag++) {
+            if (tag != model.startState()) tagIds.putIfAbsent(model.tagName(tag), tagIds.size());
+        }
+        for (int line = 0; line < lines; line++) {
+            for (String tag : expectedTags.get(line).split(" ")) tagIds.putIfAbsent(tag, tagIds.size());
+        }
+        tagIds.putIfAbsent(NO_TAG, tagIds.size());
+        int numTags = tagIds.size();
+
+        long[] latencies = new long[lines];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Counts>> chunks = new ArrayList<>();
+        int chunkSize = (lines + threads - 1) / threads;
+        long start = System.nanoTime();
+        for (int thread = 0; thread < threads; thread++) {
+            int from = Math.min(lines, thread * chunkSize);
+            int to = Math.min(lines, from + chunkSize);
+            chunks.add(pool.submit(() -> {
+                Counts counts = new Counts(numTags);
+                for (int line = from; line < to; line++) {
+                    long sentenceStart = System.nanoTime();
+                    String computedTags = tagger.tagViterbi(sentences.get(line));
+                    latencies[line] = System.nanoTime() - sentenceStart;
+                    counts.add(computedTags.split(" "), expectedTags.get(line).split(" "), tagIds);
+                }
+                return counts;
+            }));
+        }
+
+        // merge each thread's counts
+        Counts total = new Counts(numTags);
+        try {
+            for (Future<Counts> chunk : chunks) total.merge(chunk.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("evaluation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        return new Evaluation(tagIds.keySet().toArray(new String[0]), total.confusion, lines, total.correctLines,
+                threads, seconds, latencies);
+    }
+
+    /**
+     * Helper method for evaluate() and CrossValidation
+     */
+    static List<String> readLines(String fileName) throws IOException {
+        List<String> lines = new ArrayList<>();
+        LineReader file = new LineReader(fileName);
+        CharSequence line;
+        while ((line = file.readLine()) != null) lines.add(line.toString());
+        file.close();
+        return lines;
+    }
+
+    /**
+     * Counts kept by one evaluation thread
+     */
+    private static class Counts {
+        final long[][] confusion;
+        int correctLines = 0;
+
+        Counts(int numTags) {
+            confusion = new long[numTags][numTags];
+        }
+
+        /**
+         * Counts one sentence, a line is only correct if every one of its tags is
+         */
+        void add(String[] computed, String[] expected, Map<String, Integer> tagIds) {
+            int lineErrors = 0;
+            for (int i = 0; i < expected.length; i++) {
+                String computedTag = i < computed.length ? computed[i] : NO_TAG;
+                if (!computedTag.equals(expected[i])) lineErrors++;
+                confusion[tagIds.get(expected[i])][tagIds.getOrDefault(computedTag, tagIds.get(NO_TAG))]++;
+            }
+            if (lineErrors == 0 && computed.length == expected.length) correctLines++;
+        }
+
+        void merge(Counts other) {
+            for (int row = 0; row < confusion.length; row++) {
+                for (int column = 0; column < confusion.length; column++) confusion[row][column] += other.confusion[row][column];
+            }
+            correctLines += other.correctLines;
+        }
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getCorrectLines() {
+        return correctLines;
+    }
+
+    public long getTags() {
+        long tags = 0;
+        for (long[] row : confusion) {
+            for (long count : row) tags += count;
+        }
+        return tags;
+    }
+
+    public long getCorrectTags() {
+        long correct = 0;
+        for (int tag = 0; tag < confusion.length; tag++) correct += confusion[tag][tag];
+        return correct;
+    }
+
+    public double getSentencesPerSecond() {
+        return lines / seconds;
+    }
+
+    /**
+     * @param fraction fraction of sentences tagged at least as fast, such as 0.99
+     * @return latency of that percentile in microseconds, 0 if there were no sentences
+     */
+    public double getLatencyMicros(double fraction) {
+        if (latencies.length == 0) return 0;
+        int index = (int) Math.ceil(fraction * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e3;
+    }
+
+    /**
+     * @return of the tokens given the tag, the fraction that should have had it (0 if it was never given)
+     */
+    public double getPrecision(String tag) {
+        int id = Arrays.asList(tagNames).indexOf(tag);
+        if (id < 0) return 0;
+        long given = 0;
+        for (long[] row : confusion) given += row[id];
+        return given == 0 ? 0 : (double) confusion[id][id] / given;
+    }
+
+    /**
+     * @return of the tokens that should have had the tag, the fraction that were given it (0 if none should have)
+     */
+    public double getRecall(String tag) {
+        int id = Arrays.asList(tagNames).indexOf(tag);
+        if (id < 0) return 0;
+        long expected = 0;
+        for (long count : confusion[id]) expected += count;
+        return expected == 0 ? 0 : (double) confusion[id][id] / expected;
+    }
+
+    /**
+     * @return accuracy, timing, precision and recall of each tag that came up, and the most common confusions
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Out of %d lines, %d (%.2f%%) were tagged correctly and %d incorrectly.%n",
+                lines, correctLines, 100. * correctLines / Math.max(lines, 1), lines - correctLines));
+        text.append(String.format("Out of %d tags, %d (%.2f%%) were correct and %d were incorrect.%n",
+                getTags(), getCorrectTags(), 100. * getCorrectTags() / Math.max(getTags(), 1), getTags() - getCorrectTags()));
+        text.append(String.format("%d thread(s): %.0f sentences/sec, latency p50 %.1f us, p99 %.1f us%n",
+                threads, getSentencesPerSecond(), getLatencyMicros(0.50), getLatencyMicros(0.99)));
+
+        text.append(String.format("%-8s %9s %9s %9s %9s%n", "tag", "expected", "given", "precision", "recall"));
+        for (int id = 0; id < tagNames.length; id++) {
+            long expected = 0;
+            long given = 0;
+            for (int other = 0; other < tagNames.length; other++) {
+                expected += confusion[id][other];
+                given += confusion[other][id];
+            }
+            if (expected == 0 && given == 0) continue;
+            text.append(String.format("%-8s %9d %9d %8.2f%% %8.2f%%%n", tagNames[id], expected, given,
+                    100 * getPrecision(tagNames[id]), 100 * getRecall(tagNames[id])));
+        }
+
+        // the ten most common mistakes
+        List<long[]> mistakes = new ArrayList<>(); // {count, expected id, given id}
+        for (int row = 0; row < tagNames.length; row++) {
+            for (int column = 0; column < tagNames.length; column++) {
+                if (row != column && confusion[row][column] > 0) mistakes.add(new long[]{confusion[row][column], row, column});
+            }
+        }
+        mistakes.sort((a, b) -> Long.compare(b[0], a[0]));
+        text.append("Most common confusions (expected -> given):").append(System.lineSeparator());
+        for (long[] mistake : mistakes.subList(0, Math.min(10, mistakes.size()))) {
+            text.append(String.format("\t%s -> %s: %d%n", tagNames[(int) mistake[1]], tagNames[(int) mistake[2]], mistake[0]));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the full confusion matrix, a row for each expected tag and a column for each given tag,
+     *         leaving out tags that never came up
+     */
+    public String confusionMatrix() {
+        List<Integer> used = new ArrayList<>();
+        for (int id = 0; id < tagNames.length; id++) {
+            long total = 0;
+            for (int other = 0; other < tagNames.length; other++) total += confusion[id][other] + confusion[other][id];
+            if (total > 0) used.add(id);
+        }
+        StringBuilder text = new StringBuilder(String.format("%-6s", ""));
+        for (int column : used) text.append(String.format("%7s", tagNames[column]));
+        text.append(System.lineSeparator());
+        for (int row : used) {
+            text.append(String.format("%-6s", tagNames[row]));
+            for (int column : used) text.append(String.format("%7d", confusion[row][column]));
+            text.append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Trains on one pair of files and evaluates on another
+     *
+     * @param args training sentences, training tags, test sentences, test tags, and optionally the number of threads
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: java Evaluation trainSentences trainTags testSentences testTags [threads]");
+            return;
+        }
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        POSTagger tagger = new POSTagger();
+        tagger.setCompiled(true);
+        tagger.fileTraining(args[0], args[1]);
+        try {
+            Evaluation evaluation = evaluate(tagger, args[2], args[3], threads);
+            System.out.print(evaluation.report());
+            System.out.print(evaluation.confusionMatrix());
+        } catch (IOException e) {
+            System.out.println("Error reading test files: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,250 @@
+import java.util.*;
+
+/**
+ * Confidence output for a CompiledModel: the posterior probability of every tag at every token (forward-backward)
+ * and the N best tag sequences (list Viterbi, which keeps the N best partial paths into each state instead of one).
+ * Both run over the same dense arrays as CompiledModel.tag() and reuse a per-thread Workspace, so the posteriors cost
+ * about two Viterbi passes and the N-best list about N.
+ * The forward and backward passes work with probabilities scaled back to a sum of 1 at each token rather than with
+ * log-sum-exp, which gives the same posteriors with one multiply-add per transition instead of an exp.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class ForwardBackward {
+    /**
+     * Tags a sentence with confidences
+     *
+     * @param model compiled model to tag with
+     * @param sentence sentence with a space between every observation
+     * @param workspace reusable buffers, must not be shared between threads
+     * @param nBest number of tag sequences wanted, at least 1 (the first is the Viterbi path)
+     * @return posteriors and the N best tag sequences, null if nBest is below 1
+     */
+    public static ScoredTags tag(CompiledModel model, String sentence, Workspace workspace, int nBest) {
+        if (nBest < 1) {
+            System.out.println("Error, nBest must be at least 1, got " + nBest);
+            return null;
+        }
+        Tokenizer tokens = workspace.tokenizer;
+        int length = tokens.tokenize(sentence, true);
+        int numTags = model.numTags();
+        workspace.ensureCapacity(length, numTags, nBest);
+
+        // observation scores of every token, kept for the backward pass and list Viterbi
+        for (int i = 0; i < length; i++) {
+            int entry = model.findObservation(tokens, i);
+            double[] observationScores = model.observationScores(tokens, i, entry, workspace.scratch);
+            System.arraycopy(observationScores, 0, workspace.observationScores[i], 0, numTags);
+        }
+
+        double logProbability = forwardBackward(model, length, workspace);
+        double[][] posteriors = new double[length][];
+        for (int i = 0; i < length; i++) posteriors[i] = Arrays.copyOf(workspace.posteriors[i], numTags);
+
+        String[][] paths = new String[nBest][];
+        double[] pathScores = new double[nBest];
+        int numPaths = listViterbi(model, length, nBest, workspace, paths, pathScores);
+        return new ScoredTags(model, posteriors, Arrays.copyOf(paths, numPaths), Arrays.copyOf(pathScores, numPaths), logProbability);
+    }
+
+    /**
+     * Helper method for tag()
+     * Runs the scaled forward and backward passes, leaving each token's posteriors in workspace.posteriors
+     *
+     * @return log-probability of the sentence under the model, NO_TRANSITION if no path reaches its end
+     */
+    private static double forwardBackward(CompiledModel model, int length, Workspace workspace) {
+        int numTags = model.numTags();
+        double[][] transitions = model.transitionProbabilities();
+        double[][] forward = workspace.forward;
+        double[][] emissions = workspace.emissions;
+        double logProbability = 0;
+
+        // forward: forward[i][state] is P(state at i | tokens up to i), emissions[i] are exp(observation scores - their max)
+        double[] previous = workspace.start;
+        Arrays.fill(previous, 0, numTags, 0.);
+        previous[model.startState()] = 1.;
+        for (int i = 0; i < length; i++) {
+            double[] observationScores = workspace.observationScores[i];
+            double maxScore = CompiledModel.NO_TRANSITION;
+            for (int state = 0; state < numTags; state++) maxScore = Math.max(maxScore, observationScores[state]);
+            for (int state = 0; state < numTags; state++) emissions[i][state] = Math.exp(observationScores[state] - maxScore);
+
+            double[] current = forward[i];
+            Arrays.fill(current, 0, numTags, 0.);
+            for (int prevState = 0; prevState < numTags; prevState++) {
+                double prevProbability = previous[prevState];
+                if (prevProbability == 0) continue;
+                double[] row = transitions[prevState];
+                for (int state = 0; state < numTags; state++) current[state] += prevProbability * row[state];
+            }
+            double total = 0;
+            for (int state = 0; state < numTags; state++) {
+                current[state] *= emissions[i][state];
+                total += current[state];
+            }
+            if (total == 0 || maxScore == CompiledModel.NO_TRANSITION) { // dead end, no path has a probability
+                for (int token = 0; token < length; token++) Arrays.fill(workspace.posteriors[token], 0, numTags, 0.);
+                return CompiledModel.NO_TRANSITION;
+            }
+            for (int state = 0; state < numTags; state++) current[state] /= total;
+            logProbability += Math.log(total) + maxScore;
+            previous = current;
+        }
+
+        // backward: next[state] is P(tokens after i | state at i), scaled, and posterior = forward * backward
+        double[] next = workspace.backwardA;
+        double[] current = workspace.backwardB;
+        Arrays.fill(next, 0, numTags, 1.);
+        for (int i = length - 1; i >= 0; i--) {
+            double[] posteriors = workspace.posteriors[i];
+            double total = 0;
+            for (int state = 0; state < numTags; state++) {
+                posteriors[state] = forward[i][state] * next[state];
+                total += posteriors[state];
+            }
+            for (int state = 0; state < numTags; state++) posteriors[state] /= total;
+            if (i == 0) break;
+
+            // move the backward probabilities to token i - 1
+            double scale = 0;
+            for (int state = 0; state < numTags; state++) {
+                double[] row = transitions[state];
+                double sum = 0;
+                for (int nextState = 0; nextState < numTags; nextState++) sum += row[nextState] * emissions[i][nextState] * next[nextState];
+                current[state] = sum;
+                scale = Math.max(scale, sum);
+            }
+            for (int state = 0; state < numTags; state++) current[state] /= scale;
+            double[] temp = next;
+            next = current;
+            current = temp;
+        }
+        return logProbability;
+    }
+
+    /**
+     * Helper method for tag()
+     * List Viterbi: keeps the nBest best scores (with backpointers to a state and rank) for each state at each token,
+     * then traces back from the nBest best endings
+     *
+     * @return number of paths found, fewer than nBest if the lattice doesn't have that many
+     */
+    private static int listViterbi(CompiledModel model, int length, int nBest, Workspace workspace, String[][] paths, double[] pathScores) {
+        int numTags = model.numTags();
+        double[] previous = workspace.start;
+        Arrays.fill(previous, 0, numTags * nBest, CompiledModel.NO_TRANSITION);
+        previous[model.startState() * nBest] = 0.;
+
+        // scores[i][state * nBest + rank], ranks are in descending order of score
+        for (int i = 0; i < length; i++) {
+            double[] observationScores = workspace.observationScores[i];
+            double[] current = workspace.scores[i];
+            int[] backPointers = workspace.backPointers[i];
+            Arrays.fill(current, 0, numTags * nBest, CompiledModel.NO_TRANSITION);
+            for (int prevState = 0; prevState < numTags; prevState++) {
+                if (previous[prevState * nBest] == CompiledModel.NO_TRANSITION) continue;
+                double[] row = model.transitionRow(prevState);
+                for (int state = 0; state < numTags; state++) {
+                    if (row[state] == CompiledModel.NO_TRANSITION) continue;
+                    double step = row[state] + observationScores[state];
+                    for (int rank = 0; rank < nBest; rank++) {
+                        double score = previous[prevState * nBest + rank] + step;
+                        // ranks get worse, so once one doesn't make the list the rest won't either
+                        if (!insert(current, backPointers, state * nBest, nBest, score, prevState * nBest + rank)) break;
+                    }
+                }
+            }
+            previous = current;
+        }
+        if (length == 0) return 0;
+
+        // the best endings over every final state and rank
+        double[] endScores = workspace.endScores;
+        int[] endStates = workspace.endStates;
+        Arrays.fill(endScores, 0, nBest, CompiledModel.NO_TRANSITION);
+        for (int state = 0; state < numTags; state++) {
+            for (int rank = 0; rank < nBest; rank++) {
+                if (!insert(endScores, endStates, 0, nBest, previous[state * nBest + rank], state * nBest + rank)) break;
+            }
+        }
+
+        int numPaths = 0;
+        for (int path = 0; path < nBest && endScores[path] != CompiledModel.NO_TRANSITION; path++, numPaths++) {
+            String[] pathTags = new String[length];
+            int node = endStates[path]; // state * nBest + rank
+            for (int i = length - 1; i >= 0; i--) {
+                pathTags[i] = model.tagName(node / nBest);
+                node = workspace.backPointers[i][node];
+            }
+            paths[path] = pathTags;
+            pathScores[path] = endScores[path];
+        }
+        return numPaths;
+    }
+
+    /**
+     * Helper method for listViterbi()
+     * Puts a score into a descending list of nBest scores at offset, dropping the last, if it is better than the last
+     *
+     * @return false if the score didn't make the list
+     */
+    private static boolean insert(double[] scores, int[] backPointers, int offset, int nBest, double score, int backPointer) {
+        int last = offset + nBest - 1;
+        if (!(score > scores[last])) return false; // ties keep the earlier path, as Viterbi does
+        int position = last;
+        while (position > offset && score > scores[position - 1]) {
+            scores[position] = scores[position - 1];
+            backPointers[position] = backPointers[position - 1];
+            position--;
+        }
+        scores[position] = score;
+        backPointers[position] = backPointer;
+        return true;
+    }
+
+    /**
+     * Lattice buffers reused from one sentence to the next, grown as needed; one per thread
+     */
+    public static class Workspace {
+        private double[][] observationScores = new double[0][];
+        private double[][] emissions = new double[0][];
+        private double[][] forward = new double[0][];
+        private double[][] posteriors = new double[0][];
+        private double[][] scores = new double[0][];
+        private int[][] backPointers = new int[0][];
+        private double[] start = new double[0];
+        private double[] backwardA = new double[0];
+        private double[] backwardB = new double[0];
+        private double[] scratch = new double[0];
+        private double[] endScores = new double[0];
+        private int[] endStates = new int[0];
+        private final Tokenizer tokenizer = new Tokenizer();
+        private int numTags = 0;
+        private int nBest = 0;
+
+        void ensureCapacity(int length, int numTags, int nBest) {
+            if (this.numTags < numTags || this.nBest < nBest) {
+                this.numTags = Math.max(this.numTags, numTags);
+                this.nBest = Math.max(this.nBest, nBest);
+                start = new double[this.numTags * this.nBest];
+                backwardA = new double[this.numTags];
+                backwardB = new double[this.numTags];
+                scratch = new double[this.numTags];
+                endScores = new double[this.nBest];
+                endStates = new int[this.nBest];
+                observationScores = new double[0][]; // rows are too short now, rebuild below
+            }
+            if (observationScores.length < length) {
+                int rows = Math.max(length, observationScores.length * 2);
+                observationScores = new double[rows][this.numTags];
+                emissions = new double[rows][this.numTags];
+                forward = new double[rows][this.numTags];
+                posteriors = new double[rows][this.numTags];
+                scores = new double[rows][this.numTags * this.nBest];
+                backPointers = new int[rows][this.numTags * this.nBest];
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Reads a text file line by line through one large NIO buffer, giving the same lines as BufferedReader.readLine()
+ * (lines end at \n, \r or \r\n, and the file is decoded with the default charset, like FileReader).
+ * Each line is handed out in a reused buffer rather than a new String.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class LineReader implements Closeable {
+    static final int BUFFER_SIZE = 1 << 20; // bytes read from the file at once
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+    private boolean endOfInput = false; // the whole file has been read into bytes
+    private boolean finished = false; // everything has been decoded
+    private boolean skipLineFeed = false; // the last line ended with \r, so a \n right after it belongs to it
+
+    public LineReader(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        chars.flip(); // nothing decoded yet
+    }
+
+    /**
+     * @return the next line without its line terminator, shared and only valid until the next call; null at the end of the file
+     */
+    public CharSequence readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            if (!chars.hasRemaining() && !fill()) return line.length() > 0 ? line : null;
+            char[] array = chars.array();
+            int position = chars.position();
+            int limit = chars.limit();
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (array[position] == '\n') position++;
+            }
+            // copy up to the end of the line (or of the decoded chars) in one go
+            int end = position;
+            while (end < limit && array[end] != '\n' && array[end] != '\r') end++;
+            line.append(array, position, end - position);
+            if (end < limit) {
+                skipLineFeed = array[end] == '\r';
+                chars.position(end + 1);
+                return line;
+            }
+            chars.position(end);
+        }
+    }
+
+    /**
+     * Helper method for readLine()
+     * Decodes more of the file into chars
+     *
+     * @return false if there is nothing left
+     */
+    private boolean fill() throws IOException {
+        if (finished) return false;
+        chars.clear();
+        while (chars.position() == 0) {
+            if (!endOfInput && channel.read(bytes) < 0) endOfInput = true;
+            bytes.flip();
+            decoder.decode(bytes, chars, endOfInput);
+            bytes.compact();
+            if (endOfInput) {
+                decoder.flush(chars);
+                finished = true;
+                break;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.*;
+import java.net.*;
+import java.net.http.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Load-test client for TaggingServer: a number of client threads each send one sentence per request,
+ * back to back, and every request's latency is recorded.
+ * Runs entirely on localhost; main() starts its own server unless it is pointed at one.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class LoadTest {
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final URI uri;
+
+    /**
+     * @param port port of a TaggingServer on localhost
+     */
+    public LoadTest(int port) {
+        uri = URI.create("http://localhost:" + port + "/tag");
+    }
+
+    /**
+     * Result of one run
+     */
+    public static class Result {
+        public final int concurrency;
+        public final int requests;
+        public final int failures; // error statuses or answers that didn't match the expected ones
+        public final double seconds;
+        private final long[] latencies; // nanoseconds, sorted
+
+        Result(int concurrency, int requests, int failures, double seconds, long[] latencies) {
+            this.concurrency = concurrency;
+            this.requests = requests;
+            this.failures = failures;
+            this.seconds = seconds;
+            this.latencies = latencies;
+        }
+
+        public double requestsPerSecond() {
+            return requests / seconds;
+        }
+
+        /**
+         * @param fraction fraction of requests answered at least as fast, such as 0.99
+         * @return latency of that percentile in microseconds
+         */
+        public double latencyMicros(double fraction) {
+            if (latencies.length == 0) return 0;
+            int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e3;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d client(s): %.0f requests/sec, latency p50 %.0f us, p99 %.0f us, %d failures",
+                    concurrency, requestsPerSecond(), latencyMicros(0.50), latencyMicros(0.99), failures);
+        }
+    }
+
+    /**
+     * Sends requests from several threads at once
+     *
+     * @param sentences sentences to send, one per request, taken in turn
+     * @param expectedJson answer expected for each sentence (TaggingServer.toJson() of its tags), null to not check
+     * @param concurrency number of client threads
+     * @param requests total number of requests
+     */
+    public Result run(List<String> sentences, List<String> expectedJson, int concurrency, int requests) {
+        long[] latencies = new long[requests];
+        int[] failures = new int[concurrency];
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> done = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int thread = 0; thread < concurrency; thread++) {
+            int clientId = thread;
+            done.add(clients.submit(() -> {
+                for (int request = clientId; request < requests; request += concurrency) { // requests are dealt out in turn
+                    int sentence = request % sentences.size();
+                    HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+                            .POST(HttpRequest.BodyPublishers.ofString(sentences.get(sentence), StandardCharsets.UTF_8)).build();
+                    long requestStart = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                        latencies[request] = System.nanoTime() - requestStart;
+                        if (response.statusCode() != 200 || (expectedJson != null && !response.body().equals(expectedJson.get(sentence)))) {
+                            failures[clientId]++;
+                        }
+                    } catch (IOException e) {
+                        latencies[request] = System.nanoTime() - requestStart;
+                        failures[clientId]++;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> client : done) client.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("load test failed", e.getCause());
+        } finally {
+            clients.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        return new Result(concurrency, requests, Arrays.stream(failures).sum(), seconds, latencies);
+    }
+
+    /**
+     * Load tests a server on localhost, starting one first if no port is given
+     *
+     * @param args sentences file, then either the port of a running server
+     *             or a training sentences file and tags file to start one with (max batch 64, max wait 500 us),
+     *             then optionally the number of requests per run (10000)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java LoadTest sentences (port | trainSentences trainTags) [requests]");
+            return;
+        }
+        List<String> sentences = Evaluation.readLines(args[0]);
+        TaggingServer server = null;
+        int port;
+        int next;
+        if (args[1].matches("\\d+")) {
+            port = Integer.parseInt(args[1]);
+            next = 2;
+        }
+        else {
+            TaggingServer.setNoDelay();
+            POSTagger tagger = new POSTagger();
+            tagger.setCompiled(true);
+            tagger.fileTraining(args[1], args[2]);
+            server = new TaggingServer(tagger, 0, 64, 500);
+            server.start();
+            port = server.getPort();
+            next = 3;
+        }
+        int requests = args.length > next ? Integer.parseInt(args[next]) : 10000;
+        LoadTest loadTest = new LoadTest(port);
+        loadTest.run(sentences, null, 4, Math.min(requests, 2000)); // warm up
+        for (int concurrency : new int[]{1, 4, 16, 64}) System.out.println(loadTest.run(sentences, null, concurrency, requests));
+        if (server != null) server.stop();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+/**
+ * The dense step of Viterbi decoding as a max-plus product: for every next tag, the best over current tags of
+ * current score + transition score + observation score, and which current tag gave it.
+ * CompiledModel runs this step with its own scalar loop unless it is given a kernel, which lays the transition matrix out
+ * however suits it. A kernel must give bit-identical scores and backpointers to the scalar loop: scores are added in the
+ * same order ((current + transition) + observation) and ties go to the lowest current tag id.
+ * VECTOR is the SIMD kernel in vector/VectorMaxPlus.java. It needs the incubating jdk.incubator.vector module,
+ * so it is compiled and run separately (see that file) and looked up by name; it is null wherever it can't be loaded.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public interface MaxPlusKernel {
+    MaxPlusKernel VECTOR = load("VectorMaxPlus");
+
+    /**
+     * @param transitions transitions[from][to] with CompiledModel.NO_TRANSITION where there is none, numTags by numTags
+     * @return the matrix laid out for step(), made once per model
+     */
+    double[] layout(double[][] transitions, int numTags);
+
+    /**
+     * @return length a score or backpointer array needs for step() to fill it, at least numTags
+     */
+    int paddedLength(int numTags);
+
+    /**
+     * Moves the scores forward by one observation into every next state.
+     * Only reached current states need to be folded in, which after beam pruning is a few of them, so a kernel should skip the rest.
+     *
+     * @param layout transitions from layout()
+     * @param currScores scores of the current states, NO_TRANSITION for those not reached
+     * @param nextScores paddedLength(numTags) long, overwritten with the best score of each next state
+     * @param backPointers paddedLength(numTags) long, the current state of each reached next state's best score is written
+     *                     (the kernel may use it as scratch before then)
+     * @param observationScores observation score of every next state, numTags long
+     * @param scratch paddedLength(numTags) long, for the kernel to use as it likes
+     * @return number of reached current states, 0 if no next state could be reached
+     */
+    int step(double[] layout, int numTags, double[] currScores, double[] nextScores, int[] backPointers, double[] observationScores,
+             double[] scratch);
+
+    /**
+     * Helper method for VECTOR
+     * Loads a kernel class from the same package as this interface
+     *
+     * @return an instance of the class, null if it isn't there or can't run on this JVM
+     */
+    private static MaxPlusKernel load(String className) {
+        String packageName = MaxPlusKernel.class.getPackageName();
+        try {
+            Class<?> kernel = Class.forName(packageName.isEmpty() ? className : packageName + "." + className);
+            return (MaxPlusKernel) kernel.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) { // not compiled, or the vector module wasn't added
+            return null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compact binary file format for a trained model, so a tagger can start without retraining.
+ * Layout (big-endian):
+ *   int magic, int version, double unseenObservationScore
+ *   int numTags, then per tag: string name, byte 1 if the state has a transitions map
+ *   numTags * numTags doubles of transition scores (negative infinity where there is no transition)
+ *   int numWords, numWords ints giving the file position of each word's entry
+ *   per word (sorted as Strings sort): string word, int n, n * (int tagId, double score)
+ * Strings are an int length followed by that many UTF-16 chars. Tag ids follow CompiledModel's numbering, so "#" is 0.
+ * Files are read through a memory-mapped FileChannel and words are looked up by binary search in the mapped file,
+ * so loading doesn't depend on the size of the vocabulary.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class ModelFile {
+    static final int MAGIC = 0x504F5354; // "POST"
+    static final int VERSION = 1;
+
+    /**
+     * Writes a trained model to a file.
+     * It is written to fileName.partial first, so a failed write leaves any existing file as it was.
+     *
+     * @param model snapshot to save, must be trained
+     * @param fileName name or path of file to write
+     */
+    public static void write(TrainedModel model, String fileName) throws IOException {
+        CompiledModel compiled = model.compiled();
+
+        // vocabulary with each word's (tag id, score) pairs, already sorted so words can be binary searched
+        List<String> words = new ArrayList<>();
+        List<Integer> wordSizes = new ArrayList<>(); // number of pairs of each word
+        List<Integer> entryTags = new ArrayList<>();
+        List<Double> entryScores = new ArrayList<>();
+        compiled.forEachObservation((word, tagId, score) -> {
+            if (words.isEmpty() || !words.get(words.size() - 1).equals(word)) {
+                words.add(word);
+                wordSizes.add(0);
+            }
+            wordSizes.set(wordSizes.size() - 1, wordSizes.get(wordSizes.size() - 1) + 1);
+            entryTags.add(tagId);
+            entryScores.add(score);
+        });
+
+        Path partial = Paths.get(fileName + ".partial"); // moved over fileName only once it is complete
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16))) {
+            writeModel(out, compiled, model.getUnseenObservationScore(), words, wordSizes, entryTags, entryScores);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Helper method for write()
+     * Writes the whole file layout to the stream
+     */
+    private static void writeModel(DataOutputStream out, CompiledModel compiled, double unseenObservationScore, List<String> words,
+                                   List<Integer> wordSizes, List<Integer> entryTags, List<Double> entryScores) throws IOException {
+        int numTags = compiled.numTags();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeDouble(unseenObservationScore);
+
+        // tag table
+        out.writeInt(numTags);
+        for (int tag = 0; tag < numTags; tag++) {
+            writeString(out, compiled.tagName(tag));
+            out.writeByte(compiled.hasTransitions(tag) ? 1 : 0);
+        }
+
+        // transition matrix
+        for (int from = 0; from < numTags; from++) {
+            for (int to = 0; to < numTags; to++) out.writeDouble(compiled.transitionScore(from, to));
+        }
+
+        // offsets of each entry, worked out before writing them
+        out.writeInt(words.size());
+        int position = out.size() + words.size() * Integer.BYTES;
+        for (int word = 0; word < words.size(); word++) {
+            out.writeInt(position);
+            position += Integer.BYTES + words.get(word).length() * Character.BYTES
+                    + Integer.BYTES + wordSizes.get(word) * (Integer.BYTES + Double.BYTES);
+        }
+
+        // (tag id, score) pairs of each word
+        int entry = 0;
+        for (int word = 0; word < words.size(); word++) {
+            writeString(out, words.get(word));
+            out.writeInt(wordSizes.get(word));
+            for (int i = 0; i < wordSizes.get(word); i++, entry++) {
+                out.writeInt(entryTags.get(entry));
+                out.writeDouble(entryScores.get(entry));
+            }
+        }
+    }
+
+    /**
+     * Helper method for write()
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeInt(string.length());
+        out.writeChars(string);
+    }
+
+    /**
+     * Loads a model file through a memory map.
+     * Only the tag table and transition matrix are read straight away. Words are looked up in the mapped file while tagging,
+     * and the maps are decoded from it if they are ever asked for.
+     *
+     * @param fileName name or path of file written by write()
+     * @return compiled snapshot of the saved model
+     */
+    public static TrainedModel read(String fileName) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // mapping stays valid after closing
+        }
+        if (buffer.getInt() != MAGIC) throw new IOException(fileName + " is not a POSTagger model file");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("unsupported model file version " + version);
+        double unseenObservationScore = buffer.getDouble();
+
+        // tag table
+        int numTags = buffer.getInt();
+        String[] tags = new String[numTags];
+        boolean[] hasTransitions = new boolean[numTags];
+        for (int tag = 0; tag < numTags; tag++) {
+            tags[tag] = readString(buffer, buffer.position());
+            buffer.position(buffer.position() + Integer.BYTES + tags[tag].length() * Character.BYTES);
+            hasTransitions[tag] = buffer.get() == 1;
+        }
+
+        // transition matrix
+        double[][] transitions = new double[numTags][numTags];
+        for (int from = 0; from < numTags; from++) {
+            buffer.asDoubleBuffer().get(transitions[from]); // bulk read the row, then skip past it
+            buffer.position(buffer.position() + numTags * Double.BYTES);
+        }
+
+        MappedObservations observations = new MappedObservations(buffer, buffer.position(), numTags, unseenObservationScore);
+        return new TrainedModel(new CompiledModel(tags, 0, transitions, hasTransitions, observations), unseenObservationScore);
+    }
+
+    /**
+     * Reads a string at a position without moving the buffer
+     */
+    private static String readString(ByteBuffer buffer, int position) {
+        char[] chars = new char[buffer.getInt(position)];
+        for (int i = 0; i < chars.length; i++) chars[i] = buffer.getChar(position + Integer.BYTES + i * Character.BYTES);
+        return new String(chars);
+    }
+
+    /**
+     * Observation scores read straight out of the vocabulary section of a mapped model file.
+     * Only absolute reads are used, so one instance can be shared by every tagging thread.
+     */
+    private static class MappedObservations implements CompiledModel.ObservationTable {
+        private final ByteBuffer buffer;
+        private final int numWords;
+        private final int offsetsStart; // position of the first entry offset
+        private final double[] unseenObservations;
+
+        MappedObservations(ByteBuffer buffer, int vocabularyStart, int numTags, double unseenObservationScore) {
+            this.buffer = buffer;
+            this.numWords = buffer.getInt(vocabularyStart);
+            this.offsetsStart = vocabularyStart + Integer.BYTES;
+            this.unseenObservations = new double[numTags];
+            Arrays.fill(unseenObservations, unseenObservationScore);
+        }
+
+        public double[] scores(int entry, double[] scratch) {
+            if (entry < 0) return unseenObservations;
+            System.arraycopy(unseenObservations, 0, scratch, 0, unseenObservations.length);
+            int position = entry + Integer.BYTES + buffer.getInt(entry) * Character.BYTES; // skip the word
+            int numWordTags = buffer.getInt(position);
+            position += Integer.BYTES;
+            for (int i = 0; i < numWordTags; i++) {
+                scratch[buffer.getInt(position)] = buffer.getDouble(position + Integer.BYTES);
+                position += Integer.BYTES + Double.BYTES;
+            }
+            return scratch;
+        }
+
+        public int knownTags(int entry, int[] tagIds) {
+            int position = entry + Integer.BYTES + buffer.getInt(entry) * Character.BYTES; // skip the word
+            int numWordTags = buffer.getInt(position);
+            position += Integer.BYTES;
+            for (int i = 0; i < numWordTags; i++) tagIds[i] = buffer.getInt(position + i * (Integer.BYTES + Double.BYTES));
+            return numWordTags;
+        }
+
+        /**
+         * Binary search of the sorted vocabulary
+         *
+         * @return position of the word's entry, -1 if it isn't in the vocabulary
+         */
+        public int find(String word) {
+            int low = 0;
+            int high = numWords - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int entry = buffer.getInt(offsetsStart + middle * Integer.BYTES);
+                int comparison = compare(word, entry);
+                if (comparison == 0) return entry;
+                else if (comparison < 0) high = middle - 1;
+                else low = middle + 1;
+            }
+            return -1;
+        }
+
+        public int find(char[] chars, int start, int length) {
+            int low = 0;
+            int high = numWords - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int entry = buffer.getInt(offsetsStart + middle * Integer.BYTES);
+                int comparison = compare(chars, start, length, entry);
+                if (comparison == 0) return entry;
+                else if (comparison < 0) high = middle - 1;
+                else low = middle + 1;
+            }
+            return -1;
+        }
+
+        /**
+         * Helper method for find()
+         * Compares chars against the stored word of an entry the same way String.compareTo() does, without decoding it
+         */
+        private int compare(char[] chars, int start, int length, int entry) {
+            int storedLength = buffer.getInt(entry);
+            int shorter = Math.min(length, storedLength);
+            for (int i = 0; i < shorter; i++) {
+                char stored = buffer.getChar(entry + Integer.BYTES + i * Character.BYTES);
+                if (chars[start + i] != stored) return chars[start + i] - stored;
+            }
+            return length - storedLength;
+        }
+
+        /**
+         * Compares a word against the stored word of an entry the same way String.compareTo() does, without decoding it
+         */
+        private int compare(String word, int entry) {
+            int storedLength = buffer.getInt(entry);
+            int length = Math.min(word.length(), storedLength);
+            for (int i = 0; i < length; i++) {
+                char stored = buffer.getChar(entry + Integer.BYTES + i * Character.BYTES);
+                if (word.charAt(i) != stored) return word.charAt(i) - stored;
+            }
+            return word.length() - storedLength;
+        }
+
+        public void forEachEntry(CompiledModel.EntryVisitor visitor) {
+            for (int word = 0; word < numWords; word++) {
+                int position = buffer.getInt(offsetsStart + word * Integer.BYTES);
+                String observation = readString(buffer, position);
+                position += Integer.BYTES + observation.length() * Character.BYTES;
+                int numWordTags = buffer.getInt(position);
+                position += Integer.BYTES;
+                for (int i = 0; i < numWordTags; i++) {
+                    visitor.visit(observation, buffer.getInt(position), buffer.getDouble(position + Integer.BYTES));
+                    position += Integer.BYTES + Double.BYTES;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
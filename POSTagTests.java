@@ -1,5 +1,7 @@
 import java.io.*;
+import java.lang.management.*;
 import java.util.*;
+import javax.management.*;
 
 /**
  * Problem Set 5
@@ -21,6 +23,25 @@ public class POSTagTests {
         formattedFilesTrainAndTagTest(tagger, "simple"); // training and tagging testing with simple dataset
         //formattedFilesTrainAndTagTest(tagger, "brown"); // training and tagging testing with brown dataset
         //consoleTest(tagger); // console-based testing (REQUIRES TRAINED TAGGER)
+        //compiledThroughputTest(tagger, "brown"); // map-based vs compiled tagging speed and agreement
+        //batchScalingTest(tagger, "brown"); // batch tagging speed from 1 to all cores
+        //shardedTrainingTest(tagger, "brown"); // sharded training speed from 1 to all cores
+        //modelFileTest(tagger, "brown"); // binary model load time vs retraining time
+        //beamTradeoffTest(tagger, "brown"); // accuracy vs speed of beam-pruned decoding
+        //streamingTest(tagger, "brown"); // token-at-a-time tagging agreement and latency
+        //onlineTrainingTest(tagger, "brown"); // adding sentences to a live model vs retraining
+        //modelMemoryTest(new POSTagger(), "brown"); // heap taken by a trained tagger vs the maps
+        //tagDictionaryTest(tagger, "brown"); // accuracy vs speed of only giving known words their training tags
+        //trigramTest(tagger, "brown"); // accuracy and speed of trigram vs bigram tagging
+        //unknownWordTest(tagger, "brown"); // suffix model for unknown words vs the flat unseen score
+        //tokenizerTest(tagger, "brown"); // one-pass tokenizer and NIO reader vs readLine, toLowerCase and split
+        //metricsTest(tagger, "brown"); // tagging speed with metrics off and on, and what they report
+        //sentenceCacheTest(tagger, "brown"); // speed of repetitive input with a sentence cache, and invalidation
+        //evaluationTest(tagger, "brown"); // parallel evaluation with per-tag precision, recall and confusion matrix
+        //crossValidationTest(tagger, "brown"); // k-fold cross-validation from shared counts and a smoothing sweep
+        //confidenceTest(tagger, "brown"); // posterior confidences and N-best paths vs Viterbi, and their cost
+        //serverTest(tagger, "brown"); // localhost HTTP tagging latency and throughput with and without batching
+        //vectorKernelTest(tagger, "brown"); // SIMD vs scalar dense steps, same tags (run with --add-modules jdk.incubator.vector)
     }
 
     /**
@@ -72,8 +93,8 @@ public class POSTagTests {
                 correctTags += lineAccuracy.get("right");
                 incorrectTags += lineAccuracy.get("wrong");
 
-                // assess and count line correctness
-                if (incorrectTags == 0) correctLines++;
+                // assess and count line correctness by this line's errors only
+                if (lineAccuracy.get("wrong") == 0) correctLines++;
                 else incorrectLines++;
             }
 
@@ -105,6 +126,983 @@ public class POSTagTests {
         fileTest(tagger, testingSentencesFileName, testingTagsFileName);
     }
 
+    /**
+     * Reads every line of a file into a list (used by the timing tests)
+     */
+    private static List<String> readLines(String fileName) {
+        List<String> lines = new ArrayList<>();
+        try {
+            BufferedReader file = new BufferedReader(new FileReader(fileName));
+            String line;
+            while ((line = file.readLine()) != null) lines.add(line);
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return lines;
+    }
+
+    /**
+     * Compares tagging throughput of the map-based and compiled Viterbi paths on a set's test sentences,
+     * and confirms both produce the same tags.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void compiledThroughputTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning compiledThroughputTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        int rounds = 5;
+
+        // map-based path
+        tagger.setCompiled(false);
+        List<String> mapTags = new ArrayList<>();
+        for (String sentence : sentences) mapTags.add(tagger.tagViterbi(sentence)); // warm up and keep the output
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String sentence : sentences) tagger.tagViterbi(sentence);
+        }
+        double mapSeconds = (System.nanoTime() - start) / 1e9;
+
+        // compiled path
+        tagger.setCompiled(true);
+        int mismatches = 0;
+        for (int i = 0; i < sentences.size(); i++) { // warm up and compare with the map-based output
+            if (!tagger.tagViterbi(sentences.get(i)).equals(mapTags.get(i))) mismatches++;
+        }
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String sentence : sentences) tagger.tagViterbi(sentence);
+        }
+        double compiledSeconds = (System.nanoTime() - start) / 1e9;
+
+        int tagged = sentences.size() * rounds;
+        System.out.printf("Map-based: %.0f sentences/sec%n", tagged / mapSeconds);
+        System.out.printf("Compiled: %.0f sentences/sec (%.1fx)%n", tagged / compiledSeconds, mapSeconds / compiledSeconds);
+        System.out.println(mismatches + " of " + sentences.size() + " sentences were tagged differently.");
+        System.out.println("Completed compiledThroughputTest...\n");
+    }
+
+    /**
+     * Times batch tagging of a set's test sentences with 1 up to all available cores,
+     * and confirms the batch output matches sentence-by-sentence tagging.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void batchScalingTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning batchScalingTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        int rounds = 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (boolean compiled : new boolean[]{false, true}) {
+            tagger.setCompiled(compiled);
+            List<String> expected = new ArrayList<>();
+            for (String sentence : sentences) expected.add(tagger.tagViterbi(sentence));
+            double oneCoreSeconds = 0;
+            for (int threads = 1; threads <= cores; threads++) {
+                tagger.setBatchParallelism(threads);
+                boolean matches = tagger.tagBatch(sentences).equals(expected); // warm up and check order
+                long start = System.nanoTime();
+                for (int round = 0; round < rounds; round++) tagger.tagBatch(sentences);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (threads == 1) oneCoreSeconds = seconds;
+                System.out.printf("%s, %d thread(s): %.0f sentences/sec (%.2fx)%s%n", compiled ? "Compiled" : "Map-based",
+                        threads, sentences.size() * rounds / seconds, oneCoreSeconds / seconds, matches ? "" : " OUTPUT MISMATCH");
+            }
+        }
+        System.out.println("Completed batchScalingTest...\n");
+    }
+
+    /**
+     * Times single-threaded training against sharded training with 1 up to all available cores,
+     * and confirms the sharded maps are identical to the single-threaded ones.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void shardedTrainingTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning shardedTrainingTest...");
+        String sentencesFileName = "PS5/" + setName + "-train-sentences.txt"; // hard-code path for text files
+        String tagsFileName = "PS5/" + setName + "-train-tags.txt";
+        int rounds = 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        tagger.fileTraining(sentencesFileName, tagsFileName); // warm up and keep the expected model
+        TrainedModel expected = tagger.getModel();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) tagger.fileTraining(sentencesFileName, tagsFileName);
+        double singleSeconds = (System.nanoTime() - start) / 1e9 / rounds;
+        System.out.printf("fileTraining: %.1f ms%n", singleSeconds * 1000);
+
+        for (int threads = 1; threads <= cores; threads++) {
+            tagger.setBatchParallelism(threads);
+            tagger.fileTraining(sentencesFileName, tagsFileName, threads); // warm up and check the model
+            TrainedModel sharded = tagger.getModel();
+            boolean identical = sharded.getObservationsProbabilities().equals(expected.getObservationsProbabilities())
+                    && sharded.getTransitionsProbabilities().equals(expected.getTransitionsProbabilities());
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) tagger.fileTraining(sentencesFileName, tagsFileName, threads);
+            double seconds = (System.nanoTime() - start) / 1e9 / rounds;
+            System.out.printf("Sharded, %d thread(s): %.1f ms (%.2fx)%s%n", threads, seconds * 1000,
+                    singleSeconds / seconds, identical ? "" : " MODEL DIFFERS");
+        }
+        System.out.println("Completed shardedTrainingTest...\n");
+    }
+
+    /**
+     * Compares the time to retrain a set against the time to load the same model from a binary model file,
+     * and confirms a tagger using the loaded model tags the test sentences the same way.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void modelFileTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning modelFileTest...");
+        String path = "PS5/"; // hard-code path for text files
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+
+        File modelFile = null;
+        try {
+            modelFile = File.createTempFile(setName + "-model", ".bin"); // kept out of the data directory
+            String modelFileName = modelFile.getPath();
+            long start = System.nanoTime();
+            tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+            double trainSeconds = (System.nanoTime() - start) / 1e9;
+            tagger.saveModel(modelFileName);
+
+            POSTagger loadedTagger = new POSTagger();
+            loadedTagger.setCompiled(true);
+            start = System.nanoTime();
+            loadedTagger.loadModel(modelFileName);
+            String firstTags = loadedTagger.tagViterbi(sentences.get(0));
+            double loadSeconds = (System.nanoTime() - start) / 1e9;
+
+            int mismatches = firstTags.equals(tagger.tagViterbi(sentences.get(0))) ? 0 : 1;
+            for (int i = 1; i < sentences.size(); i++) {
+                if (!loadedTagger.tagViterbi(sentences.get(i)).equals(tagger.tagViterbi(sentences.get(i)))) mismatches++;
+            }
+            boolean sameMaps = loadedTagger.getModel().getObservationsProbabilities().equals(tagger.getModel().getObservationsProbabilities())
+                    && loadedTagger.getModel().getTransitionsProbabilities().equals(tagger.getModel().getTransitionsProbabilities());
+
+            System.out.printf("Retraining: %.1f ms%n", trainSeconds * 1000);
+            System.out.printf("Loading %d KB model file and tagging the first sentence: %.1f ms%n",
+                    new File(modelFileName).length() / 1024, loadSeconds * 1000);
+            System.out.println(mismatches + " of " + sentences.size() + " sentences were tagged differently, maps "
+                    + (sameMaps ? "match." : "DIFFER."));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (modelFile != null) modelFile.delete();
+        }
+        System.out.println("Completed modelFileTest...\n");
+    }
+
+    /**
+     * Measures tag accuracy and throughput of beam-pruned decoding for a range of beam widths and margins,
+     * next to exact compiled decoding.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void beamTradeoffTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning beamTradeoffTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> expectedTags = readLines(path + setName + "-test-tags.txt");
+        int rounds = 5;
+        int[] widths = {Integer.MAX_VALUE, 16, 8, 4, 3, 2, 1, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        double[] margins = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 10, 5};
+
+        tagger.setCompiled(true);
+        for (int setting = 0; setting < widths.length; setting++) {
+            tagger.setBeam(widths[setting], margins[setting]);
+            int correctTags = 0;
+            int incorrectTags = 0;
+            for (int i = 0; i < sentences.size(); i++) { // warm up and count accuracy
+                Map<String, Integer> lineAccuracy = taggingAccuracy(tagger.tagViterbi(sentences.get(i)), expectedTags.get(i));
+                correctTags += lineAccuracy.get("right");
+                incorrectTags += lineAccuracy.get("wrong");
+            }
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String sentence : sentences) tagger.tagViterbi(sentence);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("width %s, margin %s: %.2f%% of tags correct, %.0f sentences/sec%n",
+                    widths[setting] == Integer.MAX_VALUE ? "all" : widths[setting], margins[setting],
+                    100. * correctTags / (correctTags + incorrectTags), sentences.size() * rounds / seconds);
+        }
+        tagger.setBeam(Integer.MAX_VALUE, Double.POSITIVE_INFINITY);
+        System.out.println("Completed beamTradeoffTest...\n");
+    }
+
+    /**
+     * Checks that streaming sessions flushed after every sentence tag like tagViterbi(),
+     * then streams the whole test set without any sentence boundaries to measure how long tags are held back.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void streamingTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning streamingTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+
+        // sentence by sentence, compared with compiled tagging
+        tagger.setCompiled(true);
+        StreamingTagger session = tagger.streamingSession(1024);
+        int mismatches = 0;
+        for (String sentence : sentences) {
+            StringBuilder streamedTags = new StringBuilder();
+            for (String token : sentence.split(" ")) {
+                for (String tag : session.push(token)) streamedTags.append(tag).append(" ");
+            }
+            for (String tag : session.flush()) streamedTags.append(tag).append(" ");
+            if (!streamedTags.toString().equals(tagger.tagViterbi(sentence))) mismatches++;
+        }
+        System.out.println(mismatches + " of " + sentences.size() + " sentences were tagged differently when streamed.");
+
+        // one unbroken stream
+        for (int window : new int[]{4, 16, 64}) {
+            session = tagger.streamingSession(window);
+            long tokens = 0;
+            long tagsOut = 0;
+            long heldBack = 0; // sum over tokens of the tags still pending after pushing it
+            long start = System.nanoTime();
+            for (String sentence : sentences) {
+                for (String token : sentence.split(" ")) {
+                    tokens++;
+                    tagsOut += session.push(token).size();
+                    heldBack += tokens - tagsOut;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("window %d: %.0f tokens/sec, %.2f tokens held back on average, %d tags forced by a full window%n",
+                    window, tokens / seconds, (double) heldBack / tokens, session.getForcedTags());
+        }
+        System.out.println("Completed streamingTest...\n");
+    }
+
+    /**
+     * Trains on a set's training files, then adds its test sentences with addTrainingSentences() in batches
+     * while another thread keeps tagging. Confirms the result is identical to training on both files at once.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void onlineTrainingTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning onlineTrainingTest...");
+        String path = "PS5/"; // hard-code path for text files
+        List<String> trainSentences = readLines(path + setName + "-train-sentences.txt");
+        List<String> trainTags = readLines(path + setName + "-train-tags.txt");
+        List<String> newSentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> newTags = readLines(path + setName + "-test-tags.txt");
+        int batchSize = 100;
+
+        try {
+            // reference model: train and test files together
+            File allSentences = File.createTempFile(setName + "-all-sentences", ".txt");
+            File allTags = File.createTempFile(setName + "-all-tags", ".txt");
+            allSentences.deleteOnExit();
+            allTags.deleteOnExit();
+            writeLines(allSentences, trainSentences, newSentences);
+            writeLines(allTags, trainTags, newTags);
+            POSTagger reference = new POSTagger();
+            reference.fileTraining(allSentences.getPath(), allTags.getPath());
+
+            // live model, tagged by a reader thread the whole time
+            tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+            tagger.setCompiled(true);
+            Thread reader = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (String sentence : newSentences) tagger.tagViterbi(sentence);
+                }
+            });
+            reader.start();
+            long slowest = 0;
+            long start = System.nanoTime();
+            for (int from = 0; from < newSentences.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, newSentences.size());
+                long batchStart = System.nanoTime();
+                tagger.addTrainingSentences(newSentences.subList(from, to), newTags.subList(from, to));
+                slowest = Math.max(slowest, System.nanoTime() - batchStart);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            reader.interrupt();
+            reader.join();
+
+            boolean identical = tagger.getModel().getObservationsProbabilities().equals(reference.getModel().getObservationsProbabilities())
+                    && tagger.getModel().getTransitionsProbabilities().equals(reference.getModel().getTransitionsProbabilities());
+            System.out.printf("Added %d sentences in batches of %d: %.1f ms per batch on average, %.1f ms at most%n",
+                    newSentences.size(), batchSize, seconds * 1000 / ((newSentences.size() + batchSize - 1) / batchSize), slowest / 1e6);
+            System.out.println("Model is " + (identical ? "identical to" : "DIFFERENT from") + " training on both files at once.");
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Completed onlineTrainingTest...\n");
+    }
+
+    /**
+     * Compares exact compiled tagging with tag dictionary pruning on a set's test sentences:
+     * accuracy, throughput and how many sentences come out differently.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void tagDictionaryTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning tagDictionaryTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> expectedTags = readLines(path + setName + "-test-tags.txt");
+        int rounds = 5;
+
+        List<String> exactTags = new ArrayList<>();
+        for (boolean tagDictionary : new boolean[]{false, true}) {
+            tagger.setTagDictionary(tagDictionary);
+            int correctTags = 0;
+            int incorrectTags = 0;
+            int mismatches = 0;
+            for (int i = 0; i < sentences.size(); i++) { // warm up, count accuracy and compare with exact tagging
+                String tags = tagger.tagViterbi(sentences.get(i));
+                if (!tagDictionary) exactTags.add(tags);
+                else if (!tags.equals(exactTags.get(i))) mismatches++;
+                Map<String, Integer> lineAccuracy = taggingAccuracy(tags, expectedTags.get(i));
+                correctTags += lineAccuracy.get("right");
+                incorrectTags += lineAccuracy.get("wrong");
+            }
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String sentence : sentences) tagger.tagViterbi(sentence);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.2f%% of tags correct, %.0f sentences/sec, %d sentences tagged differently%n",
+                    tagDictionary ? "Tag dictionary" : "Exact", 100. * correctTags / (correctTags + incorrectTags),
+                    sentences.size() * rounds / seconds, mismatches);
+        }
+        tagger.setTagDictionary(false);
+        System.out.println("Completed tagDictionaryTest...\n");
+    }
+
+    /**
+     * Compares bigram and trigram tagging, each with and without tag dictionary pruning, then trigram tagging
+     * with a few beams over tag pairs: accuracy on a set's test sentences and throughput.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void trigramTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning trigramTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> expectedTags = readLines(path + setName + "-test-tags.txt");
+        int rounds = 5;
+
+        for (boolean trigram : new boolean[]{false, true}) {
+            tagger.setTrigram(trigram);
+            for (boolean tagDictionary : new boolean[]{false, true}) {
+                tagger.setTagDictionary(tagDictionary);
+                trigramAccuracyAndSpeed(tagger, sentences, expectedTags, rounds, (trigram ? "Trigram" : "Bigram")
+                        + (tagDictionary ? " with tag dictionary" : ""));
+            }
+        }
+        tagger.setTagDictionary(false);
+        int[] widths = {Integer.MAX_VALUE, 8, 16, 8};
+        double[] margins = {7, Double.POSITIVE_INFINITY, 10, 10};
+        for (int setting = 0; setting < widths.length; setting++) {
+            tagger.setBeam(widths[setting], margins[setting]);
+            trigramAccuracyAndSpeed(tagger, sentences, expectedTags, rounds, "Trigram with beam of "
+                    + (widths[setting] == Integer.MAX_VALUE ? "any number of" : widths[setting]) + " pairs within " + margins[setting]);
+        }
+        tagger.setBeam(Integer.MAX_VALUE, Double.POSITIVE_INFINITY);
+        tagger.setTrigram(false);
+        tagger.setTagDictionary(false);
+        System.out.println("Completed trigramTest...\n");
+    }
+
+    /**
+     * Helper method for trigramTest()
+     * Prints the accuracy of the tagger's current settings on the sentences, then their throughput
+     */
+    private static void trigramAccuracyAndSpeed(POSTagger tagger, List<String> sentences, List<String> expectedTags, int rounds,
+                                                String name) {
+        int correctTags = 0;
+        int incorrectTags = 0;
+        for (int i = 0; i < sentences.size(); i++) { // warm up and count accuracy
+            Map<String, Integer> lineAccuracy = taggingAccuracy(tagger.tagViterbi(sentences.get(i)), expectedTags.get(i));
+            correctTags += lineAccuracy.get("right");
+            incorrectTags += lineAccuracy.get("wrong");
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String sentence : sentences) tagger.tagViterbi(sentence);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %.2f%% of tags correct, %.0f sentences/sec%n", name, 100. * correctTags / (correctTags + incorrectTags),
+                sentences.size() * rounds / seconds);
+    }
+
+    /**
+     * Compares the flat unseen score with the suffix and shape model for unknown words: accuracy on a set's test
+     * sentences, split into words seen and not seen in training, then the cache statistics for a few cache sizes.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void unknownWordTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning unknownWordTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> expectedTags = readLines(path + setName + "-test-tags.txt");
+        CompiledModel vocabulary = tagger.compile();
+
+        for (int cacheSize : new int[]{0, 10000}) {
+            tagger.setUnknownWordModel(cacheSize);
+            int[] right = new int[2]; // index 0 for known words, 1 for unknown words
+            int[] total = new int[2];
+            long start = System.nanoTime();
+            for (int i = 0; i < sentences.size(); i++) {
+                String[] words = sentences.get(i).toLowerCase().split(" ");
+                String[] computed = tagger.tagViterbi(sentences.get(i)).split(" ");
+                String[] correct = expectedTags.get(i).split(" ");
+                for (int word = 0; word < words.length; word++) {
+                    int unknown = vocabulary.findObservation(words[word]) < 0 ? 1 : 0;
+                    total[unknown]++;
+                    if (computed[word].equals(correct[word])) right[unknown]++;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.2f%% correct, known words %.2f%%, unknown words %.2f%% (%d of %d), %.0f sentences/sec%n",
+                    cacheSize == 0 ? "Flat unseen score" : "Suffix model", 100. * (right[0] + right[1]) / (total[0] + total[1]),
+                    100. * right[0] / total[0], 100. * right[1] / total[1], total[1], total[0] + total[1], sentences.size() / seconds);
+        }
+
+        // tag the test set twice with different cache sizes
+        for (int cacheSize : new int[]{10000, 256, 16}) {
+            tagger.setUnknownWordModel(cacheSize);
+            for (int round = 0; round < 2; round++) {
+                for (String sentence : sentences) tagger.tagViterbi(sentence);
+            }
+            UnknownWordModel unknownWords = tagger.getUnknownWordModel();
+            System.out.printf("cache size %d: %.1f%% hit rate, %d hits, %d misses, %d evictions%n", cacheSize,
+                    100 * unknownWords.getCacheHitRate(), unknownWords.getCacheHits(), unknownWords.getCacheMisses(),
+                    unknownWords.getCacheEvictions());
+        }
+        tagger.setUnknownWordModel(0);
+        System.out.println("Completed unknownWordTest...\n");
+    }
+
+    /**
+     * Reads a set's training sentences the old way (BufferedReader, toLowerCase and split) and with LineReader and
+     * Tokenizer, comparing time and bytes allocated per token, then times fileTraining() on the same files.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void tokenizerTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning tokenizerTest...");
+        String path = "PS5/"; // hard-code path for text files
+        String sentencesFileName = path + setName + "-train-sentences.txt";
+        String tagsFileName = path + setName + "-train-tags.txt";
+        tagger.fileTraining(sentencesFileName, tagsFileName);
+        CompiledModel vocabulary = tagger.compile();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] names = {"BufferedReader + toLowerCase + split", "LineReader + Tokenizer", "LineReader + Tokenizer + char lookups"};
+
+        for (int round = 0; round < 3; round++) { // first rounds warm up
+            for (int way = 0; way < names.length; way++) {
+                long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                long start = System.nanoTime();
+                int tokens = 0;
+                int found = 0;
+                try {
+                    if (way == 0) {
+                        BufferedReader input = new BufferedReader(new FileReader(sentencesFileName));
+                        String line;
+                        while ((line = input.readLine()) != null) {
+                            for (String word : line.toLowerCase().split(" ")) {
+                                tokens++;
+                                if (vocabulary.findObservation(word) >= 0) found++;
+                            }
+                        }
+                        input.close();
+                    }
+                    else {
+                        LineReader input = new LineReader(sentencesFileName);
+                        Tokenizer tokenizer = new Tokenizer();
+                        CharSequence line;
+                        while ((line = input.readLine()) != null) {
+                            int length = tokenizer.tokenize(line, true);
+                            for (int i = 0; i < length; i++) {
+                                tokens++;
+                                int entry = way == 1 ? vocabulary.findObservation(tokenizer.token(i)) : vocabulary.findObservation(tokenizer, i);
+                                if (entry >= 0) found++;
+                            }
+                        }
+                        input.close();
+                    }
+                }
+                catch (IOException e) {
+                    System.out.println("Error reading file: " + e.getMessage());
+                    return;
+                }
+                double millis = (System.nanoTime() - start) / 1e6;
+                allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+                if (round == 2) {
+                    System.out.printf("%s: %.1f ms, %.1f MB allocated (%.1f bytes/token), %d of %d tokens in vocabulary%n",
+                            names[way], millis, allocated / 1e6, (double) allocated / tokens, found, tokens);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        tagger.fileTraining(sentencesFileName, tagsFileName);
+        System.out.printf("fileTraining: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        System.out.println("Completed tokenizerTest...\n");
+    }
+
+    /**
+     * Compares tagging speed with metrics off and on, prints what the metrics recorded for a set's training and
+     * tagging, then reads one of them back over JMX.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void metricsTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning metricsTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        TaggerStats stats = new TaggerStats();
+        tagger.setMetrics(stats);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        tagger.setUnknownWordModel(10000);
+
+        // tagging speed with metrics off and on, the last rounds are timed
+        for (int round = 0; round < 4; round++) {
+            for (boolean on : new boolean[]{false, true}) {
+                tagger.setMetrics(on ? stats : null);
+                long start = System.nanoTime();
+                for (String sentence : sentences) tagger.tagViterbi(sentence);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round == 3) System.out.printf("Metrics %s: %.0f sentences/sec%n", on ? "on" : "off", sentences.size() / seconds);
+            }
+        }
+        System.out.print(stats.dump());
+
+        try {
+            stats.register(setName);
+            ObjectName name = new ObjectName("POSTagger:type=TaggerStats,name=" + ObjectName.quote(setName));
+            Object p99 = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LatencyP99Micros");
+            System.out.println("LatencyP99Micros over JMX: " + p99);
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch (JMException e) {
+            System.out.println("Error with JMX: " + e.getMessage());
+        }
+        tagger.setMetrics(null);
+        tagger.setUnknownWordModel(0);
+        System.out.println("Completed metricsTest...\n");
+    }
+
+    /**
+     * Times repetitive traffic drawn from a set's test sentences with and without a sentence cache, then checks that
+     * the full cache gives no stale tags after retraining and after turning on the tag dictionary.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void sentenceCacheTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning sentenceCacheTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+
+        // repetitive traffic: 20000 lines drawn from the test set with a skewed (roughly Zipf) distribution
+        Random random = new Random(5);
+        List<String> traffic = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int sentence = (int) Math.min(sentences.size() - 1, Math.floor(Math.exp(random.nextDouble() * Math.log(sentences.size()))) - 1);
+            traffic.add(random.nextBoolean() ? sentences.get(sentence) : sentences.get(sentence).toUpperCase());
+        }
+        List<String> expected = new ArrayList<>();
+        for (String sentence : traffic) expected.add(tagger.tagViterbi(sentence));
+
+        for (int capacity : new int[]{0, 64, 256, 1024}) {
+            tagger.setSentenceCache(capacity);
+            int mismatches = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < traffic.size(); i++) {
+                if (!tagger.tagViterbi(traffic.get(i)).equals(expected.get(i))) mismatches++;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            SentenceCache cache = tagger.getSentenceCache();
+            System.out.printf("capacity %d: %.0f sentences/sec, %.1f%% hit rate, %d evictions, %d mismatches%n", capacity,
+                    traffic.size() / seconds, cache == null ? 0 : 100 * cache.getHitRate(), cache == null ? 0 : cache.getEvictions(), mismatches);
+        }
+
+        // the full cache must not answer with the old model's tags after retraining or a change of settings
+        tagger.fileTraining(path + setName + "-test-sentences.txt", path + setName + "-test-tags.txt");
+        List<String> retrained = tagger.tagBatch(traffic);
+        tagger.setTagDictionary(true);
+        List<String> withDictionary = tagger.tagBatch(traffic);
+        tagger.setSentenceCache(0);
+        int stale = 0;
+        for (int i = 0; i < traffic.size(); i++) {
+            if (!withDictionary.get(i).equals(tagger.tagViterbi(traffic.get(i)))) stale++;
+        }
+        tagger.setTagDictionary(false);
+        for (int i = 0; i < traffic.size(); i++) {
+            if (!retrained.get(i).equals(tagger.tagViterbi(traffic.get(i)))) stale++;
+        }
+        System.out.println(stale + " stale results after retraining and turning on the tag dictionary.");
+        tagger.setTagDictionary(false);
+        tagger.setSentenceCache(0);
+        System.out.println("Completed sentenceCacheTest...\n");
+    }
+
+    /**
+     * Evaluates a tagger trained on a set against its test files with Evaluation on 1 up to all available cores,
+     * then prints the per-tag report and confusion matrix.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void evaluationTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning evaluationTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        try {
+            Evaluation evaluation = null;
+            for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                evaluation = Evaluation.evaluate(tagger, path + setName + "-test-sentences.txt", path + setName + "-test-tags.txt", threads);
+                System.out.printf("%d thread(s): %.0f sentences/sec%n", threads, evaluation.getSentencesPerSecond());
+            }
+            System.out.print(evaluation.report());
+            System.out.print(evaluation.confusionMatrix());
+        } catch (IOException e) {
+            System.out.println("Error reading test files: " + e.getMessage());
+        }
+        System.out.println("Completed evaluationTest...\n");
+    }
+
+    /**
+     * Compares k-fold cross-validation by retraining from files for each fold with CrossValidation's counted-once folds,
+     * confirms both get the same tags right, then times a sweep of smoothing and unseen scores.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void crossValidationTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning crossValidationTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        List<String> sentences = readLines(path + setName + "-train-sentences.txt");
+        List<String> tags = readLines(path + setName + "-train-tags.txt");
+        int folds = 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // the slow way: retrain from files for each fold and tag its held-out lines
+        long correct = 0;
+        long total = 0;
+        long start = System.nanoTime();
+        try {
+            for (int fold = 0; fold < folds; fold++) {
+                int from = sentences.size() * fold / folds;
+                int to = sentences.size() * (fold + 1) / folds;
+                File foldSentences = File.createTempFile(setName + "-fold-sentences", ".txt");
+                File foldTags = File.createTempFile(setName + "-fold-tags", ".txt");
+                foldSentences.deleteOnExit();
+                foldTags.deleteOnExit();
+                writeLines(foldSentences, sentences.subList(0, from), sentences.subList(to, sentences.size()));
+                writeLines(foldTags, tags.subList(0, from), tags.subList(to, tags.size()));
+                tagger.fileTraining(foldSentences.getPath(), foldTags.getPath());
+                for (int line = from; line < to; line++) {
+                    Map<String, Integer> lineAccuracy = taggingAccuracy(tagger.tagViterbi(sentences.get(line)), tags.get(line));
+                    correct += lineAccuracy.get("right");
+                    total += lineAccuracy.get("right") + lineAccuracy.get("wrong");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing fold files: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Retraining for each fold: %.2f%% correct, %.2f sec%n", 100. * correct / total, (System.nanoTime() - start) / 1e9);
+
+        // counted once, then a grid of settings
+        start = System.nanoTime();
+        CrossValidation crossValidation = new CrossValidation(sentences, tags, folds, cores);
+        CrossValidation.Result original = crossValidation.evaluate(0, tagger.unseenObservationScore);
+        System.out.printf("Cross-validation, same settings: %.2f%% correct, %.2f sec including %.2f sec counting, %s%n",
+                100 * original.accuracy(), (System.nanoTime() - start) / 1e9, crossValidation.getCountingSeconds(),
+                original.correctTags == correct && original.totalTags == total ? "same tags correct" : "DIFFERENT from retraining");
+
+        start = System.nanoTime();
+        List<CrossValidation.Result> results = crossValidation.sweep(new double[]{0, 0.01, 0.1, 1},
+                new double[]{-10, -12.5, -15.625, -18.75}, cores);
+        System.out.printf("Swept %d settings on %d thread(s) in %.2f sec%n", results.size(), cores, (System.nanoTime() - start) / 1e9);
+        for (CrossValidation.Result result : results) System.out.println("\t" + result);
+        System.out.println("Best: " + results.get(0));
+        System.out.println("Completed crossValidationTest...\n");
+    }
+
+    /**
+     * Checks tagWithConfidence() on a set's test sentences: its best path against tagViterbi(), posteriors adding up
+     * to 1, N-best lists in order and how accurate low- and high-confidence tags are, then checks the posteriors and
+     * 10-best lists of a few short sentences against every path, and times both against plain tagging.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void confidenceTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning confidenceTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> expectedTags = readLines(path + setName + "-test-tags.txt");
+
+        // agreement with Viterbi, posteriors adding up to 1 and N-best lists in order
+        int mismatches = 0;
+        int unorderedLists = 0;
+        double worstSum = 0;
+        int[] right = new int[2]; // index 0 for tokens with confidence below 0.9, 1 for the rest
+        int[] total = new int[2];
+        int lowConfidenceSentences = 0;
+        for (int i = 0; i < sentences.size(); i++) {
+            ScoredTags scored = tagger.tagWithConfidence(sentences.get(i), 5);
+            if (!scored.bestTags().equals(tagger.tagViterbi(sentences.get(i)))) mismatches++;
+            for (int rank = 1; rank < scored.numPaths(); rank++) {
+                if (scored.pathScore(rank) > scored.pathScore(rank - 1) || scored.path(rank).equals(scored.path(rank - 1))) unorderedLists++;
+            }
+            String[] best = scored.bestPath();
+            String[] correct = expectedTags.get(i).split(" ");
+            for (int token = 0; token < scored.length(); token++) {
+                double sum = 0;
+                for (double posterior : scored.posteriors(token, 0).values()) sum += posterior;
+                worstSum = Math.max(worstSum, Math.abs(sum - 1));
+                int confident = scored.confidence(token) >= 0.9 ? 1 : 0;
+                total[confident]++;
+                if (best[token].equals(correct[token])) right[confident]++;
+            }
+            if (scored.minConfidence() < 0.5) lowConfidenceSentences++;
+        }
+        System.out.println(mismatches + " of " + sentences.size() + " best paths differ from Viterbi, " + unorderedLists
+                + " N-best lists out of order, posteriors add up to 1 within " + worstSum);
+        System.out.printf("Tokens with confidence >= 0.9: %.2f%% correct (%d tokens), below 0.9: %.2f%% correct (%d tokens)%n",
+                100. * right[1] / total[1], total[1], 100. * right[0] / total[0], total[0]);
+        System.out.println(lowConfidenceSentences + " sentences have a token below 0.5 confidence, for example:");
+        ScoredTags example = tagger.tagWithConfidence(sentences.get(0), 3);
+        for (int token = 0; token < example.length(); token++) {
+            System.out.println("\t" + sentences.get(0).split(" ")[token] + " " + example.posteriors(token, 0.01));
+        }
+        for (int rank = 0; rank < example.numPaths(); rank++) System.out.printf("\t%.3f %s%n", example.pathScore(rank), example.path(rank));
+
+        // brute force: score every path through a few three-word sentences and compare
+        CompiledModel model = tagger.compile();
+        int numTags = model.numTags();
+        double worstPosterior = 0;
+        int wrongScores = 0;
+        String[] shortSentences = {"the dog runs", "flibber said .", "i like xyzzy"};
+        for (String sentence : shortSentences) {
+            String[] words = sentence.split(" ");
+            double[][] observationScores = new double[words.length][];
+            for (int token = 0; token < words.length; token++) {
+                observationScores[token] = model.observationScores(words[token], new double[numTags]).clone();
+            }
+            List<Double> pathScores = new ArrayList<>();
+            double[][] pathProbabilities = new double[words.length][numTags]; // summed over the paths through each tag
+            allPaths(model, observationScores, 0, model.startState(), 0, new int[words.length], pathScores, pathProbabilities);
+            double sentenceProbability = 0;
+            for (double probability : pathProbabilities[0]) sentenceProbability += probability;
+
+            ScoredTags scored = tagger.tagWithConfidence(sentence, 10);
+            for (int token = 0; token < words.length; token++) {
+                for (int tag = 0; tag < numTags; tag++) {
+                    double posterior = pathProbabilities[token][tag] / sentenceProbability;
+                    worstPosterior = Math.max(worstPosterior, Math.abs(posterior - scored.posterior(token, model.tagName(tag))));
+                }
+            }
+            pathScores.sort(Collections.reverseOrder());
+            for (int rank = 0; rank < scored.numPaths(); rank++) {
+                if (Math.abs(pathScores.get(rank) - scored.pathScore(rank)) > 1e-9) wrongScores++;
+            }
+        }
+        System.out.println("Against all " + numTags + "^3 paths of " + shortSentences.length + " three-word sentences: posteriors within "
+                + worstPosterior + ", " + wrongScores + " of " + shortSentences.length * 10 + " 10-best scores differ");
+
+        // cost over plain tagging, the last round is timed
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (String sentence : sentences) tagger.tagViterbi(sentence);
+            double viterbi = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            for (String sentence : sentences) tagger.tagWithConfidence(sentence, 1);
+            double posteriors = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            for (String sentence : sentences) tagger.tagWithConfidence(sentence, 5);
+            double fiveBest = (System.nanoTime() - start) / 1e9;
+            if (round == 2) {
+                System.out.printf("Viterbi: %.0f sentences/sec, posteriors: %.0f sentences/sec (%.1fx), posteriors and 5-best: %.0f sentences/sec (%.1fx)%n",
+                        sentences.size() / viterbi, sentences.size() / posteriors, posteriors / viterbi, sentences.size() / fiveBest, fiveBest / viterbi);
+            }
+        }
+        System.out.println("Completed confidenceTest...\n");
+    }
+
+    /**
+     * Helper method for confidenceTest()
+     * Extends a partial path by every tag that can follow it, and at the end of the sentence records the path's score
+     * and adds its probability to every (token, tag) it passes through
+     */
+    private static void allPaths(CompiledModel model, double[][] observationScores, int token, int prevTag, double score, int[] path,
+                                 List<Double> pathScores, double[][] pathProbabilities) {
+        if (token == path.length) {
+            pathScores.add(score);
+            for (int i = 0; i < path.length; i++) pathProbabilities[i][path[i]] += Math.exp(score);
+            return;
+        }
+        for (int tag = 0; tag < model.numTags(); tag++) {
+            double transitionScore = model.transitionScore(prevTag, tag);
+            if (transitionScore == CompiledModel.NO_TRANSITION) continue;
+            path[token] = tag;
+            allPaths(model, observationScores, token + 1, tag, score + transitionScore + observationScores[token][tag], path,
+                    pathScores, pathProbabilities);
+        }
+    }
+
+    /**
+     * Serves a tagger trained on a set over localhost HTTP and measures throughput and latency at a few client
+     * concurrencies, without batching and with micro-batching, checking every answer against tagViterbi().
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void serverTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning serverTest...");
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+        List<String> expectedJson = new ArrayList<>();
+        for (String sentence : sentences) expectedJson.add(TaggingServer.toJson(List.of(tagger.tagViterbi(sentence))));
+        TaggingServer.setNoDelay();
+
+        // each answer is checked against tagging the sentence directly
+        int requests = 4000;
+        for (int maxBatch : new int[]{1, 64}) {
+            try {
+                TaggingServer server = new TaggingServer(tagger, 0, maxBatch, 500);
+                server.start();
+                LoadTest loadTest = new LoadTest(server.getPort());
+                loadTest.run(sentences, expectedJson, 4, requests); // warm up
+                System.out.println(maxBatch == 1 ? "Without batching:" : "Batches of up to " + maxBatch + " sentences, waiting up to 500 us:");
+                for (int concurrency : new int[]{1, 4, 16, 64}) System.out.println("\t" + loadTest.run(sentences, expectedJson, concurrency, requests));
+                System.out.printf("\tmean batch size %.1f%n", server.getMeanBatchSize());
+                server.stop();
+            } catch (IOException e) {
+                System.out.println("Could not start server: " + e.getMessage());
+            }
+        }
+        System.out.println("Completed serverTest...\n");
+    }
+
+    /**
+     * Checks that the SIMD kernel tags a set's test sentences exactly like the scalar dense step with exact, beam and
+     * tag dictionary settings, then compares their exact tagging throughput. Needs --add-modules jdk.incubator.vector.
+     *
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void vectorKernelTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning vectorKernelTest...");
+        if (MaxPlusKernel.VECTOR == null) {
+            System.out.println("Vector kernel not loaded, compile vector/VectorMaxPlus.java and run with --add-modules jdk.incubator.vector");
+            return;
+        }
+        String path = "PS5/"; // hard-code path for text files
+        tagger.setCompiled(true);
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        List<String> sentences = readLines(path + setName + "-test-sentences.txt");
+
+        // every setting that runs dense steps must give the same tags with either kernel
+        String[] settings = {"exact", "beam 5", "tag dictionary"};
+        for (String setting : settings) {
+            tagger.setBeam(setting.equals("beam 5") ? 5 : Integer.MAX_VALUE, setting.equals("beam 5") ? 10 : Double.POSITIVE_INFINITY);
+            tagger.setTagDictionary(setting.equals("tag dictionary"));
+            int mismatches = 0;
+            for (String sentence : sentences) {
+                tagger.setVectorized(false);
+                String scalar = tagger.tagViterbi(sentence);
+                tagger.setVectorized(true);
+                if (!scalar.equals(tagger.tagViterbi(sentence))) mismatches++;
+            }
+            System.out.println(setting + ": " + mismatches + " of " + sentences.size() + " sentences tagged differently");
+        }
+        tagger.setBeam(Integer.MAX_VALUE, Double.POSITIVE_INFINITY);
+        tagger.setTagDictionary(false);
+
+        // exact tagging speed, the last round is timed
+        for (int round = 0; round < 5; round++) {
+            tagger.setVectorized(false);
+            long start = System.nanoTime();
+            for (String sentence : sentences) tagger.tagViterbi(sentence);
+            double scalar = (System.nanoTime() - start) / 1e9;
+            tagger.setVectorized(true);
+            start = System.nanoTime();
+            for (String sentence : sentences) tagger.tagViterbi(sentence);
+            double vector = (System.nanoTime() - start) / 1e9;
+            if (round == 4) {
+                System.out.printf("Scalar: %.0f sentences/sec, vector: %.0f sentences/sec (%.2fx)%n",
+                        sentences.size() / scalar, sentences.size() / vector, scalar / vector);
+            }
+        }
+        System.out.println("Completed vectorKernelTest...\n");
+    }
+
+    /**
+     * Measures the heap taken by a trained tagger (its compiled model plus the counts kept for online training)
+     * against the heap the same model takes once it is decoded back into maps.
+     *
+     * @param tagger untrained tagger
+     * @param setName set of 4 files, one pair with training data, the other with testing data
+     */
+    public static void modelMemoryTest(POSTagger tagger, String setName) {
+        System.out.println("Beginning modelMemoryTest...");
+        String path = "PS5/"; // hard-code path for text files
+        long baseBytes = usedHeap();
+        tagger.fileTraining(path + setName + "-train-sentences.txt", path + setName + "-train-tags.txt");
+        long trainedBytes = usedHeap() - baseBytes;
+        Map<String, Map<String, Double>> observations = tagger.getModel().getObservationsProbabilities();
+        Map<String, Map<String, Double>> transitions = tagger.getModel().getTransitionsProbabilities();
+        long mapBytes = usedHeap() - baseBytes - trainedBytes;
+
+        long entries = 0;
+        for (Map<String, Double> stateObservations : observations.values()) entries += stateObservations.size();
+        System.out.printf("%d states, %d transition rows, %d (state, word) entries%n", observations.size(), transitions.size(), entries);
+        System.out.printf("Trained tagger: %.1f MB, maps decoded from it: %.1f MB more%n", trainedBytes / 1e6, mapBytes / 1e6);
+        System.out.println("Completed modelMemoryTest...\n");
+    }
+
+    /**
+     * Helper method for modelMemoryTest()
+     *
+     * @return bytes of heap in use after garbage collecting
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Writes lists of lines to a file one after the other
+     */
+    private static void writeLines(File file, List<String> first, List<String> second) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        for (String line : first) writer.write(line + "\n");
+        for (String line : second) writer.write(line + "\n");
+        writer.close();
+    }
+
     /**
      * Run a trained tagger on sentences given in the console
      */
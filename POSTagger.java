@@ -1,5 +1,8 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
 
 /**
  * Problem Set 5
@@ -11,10 +14,27 @@ import java.util.*;
  */
 
 public class POSTagger {
-    private Map<String, Map<String, Double>> observationsProbabilities; // holds probability values for each state's observations
-    private Map<String, Map<String, Double>> transitionsProbabilities; // holds probability values for moving from one state to another
+    private Map<String, Map<String, Double>> observationsProbabilities; // holds probability values for each state's observations while training
+    private Map<String, Map<String, Double>> transitionsProbabilities; // holds probability values for moving from one state to another while training
     final double unseenObservationScore = -15.625; // hard-coded score for unseen observations used when tagging
-    private boolean DEBUG = false; // default hard-coded false. can be changed with setter for testing purposes
+    private volatile boolean DEBUG = false; // default hard-coded false. can be changed with setter for testing purposes
+    private volatile boolean compiled = false; // when true, tagViterbi() runs on a CompiledModel instead of the maps
+    private volatile int beamWidth = Integer.MAX_VALUE; // most states kept per observation when tagging, no limit by default
+    private volatile double beamMargin = Double.POSITIVE_INFINITY; // largest log-score gap to the best state kept, no limit by default
+    private volatile boolean tagDictionary = false; // when true, known words are only given the tags they were seen with in training
+    private volatile MaxPlusKernel kernel = null; // runs the dense steps of compiled tagging, null for the scalar loop
+    private volatile boolean trigram = false; // when true, models trained from files also get (and tag with) a TrigramModel
+    private int unknownWordCacheSize = 0; // when above 0, models trained from files score unknown words with an UnknownWordModel
+    private volatile TrainedModel model; // immutable snapshot of the maps that all tagging reads from
+    private CountTable counts; // raw counts behind the current model, null if it was set directly or loaded from a file
+    private final ThreadLocal<CompiledModel.Workspace> workspaces = ThreadLocal.withInitial(CompiledModel.Workspace::new); // reusable buffers for compiled tagging, one set per thread
+    private final ThreadLocal<TrigramModel.Workspace> trigramWorkspaces = ThreadLocal.withInitial(TrigramModel.Workspace::new); // same for trigram tagging
+    private final ThreadLocal<ForwardBackward.Workspace> confidenceWorkspaces = ThreadLocal.withInitial(ForwardBackward.Workspace::new); // same for tagWithConfidence()
+    private ForkJoinPool batchPool = ForkJoinPool.commonPool(); // pool that batch tagging fans out over, guarded by batchPoolLock
+    private final Object batchPoolLock = new Object(); // held while a task is submitted to batchPool or the pool is replaced
+    private volatile TaggerMetrics metrics; // told about training and tagging, null when metrics are off
+    private volatile SentenceCache sentenceCache; // tags of recently tagged sentences, null when caching is off
+    static final int BATCH_BLOCK_SIZE = 8192; // number of lines tagFile() holds in memory at once
 
     /**
      * Constructor does not train. Trained maps should be supplied using this class's setters or fileTraining() method
@@ -22,14 +42,290 @@ public class POSTagger {
     public POSTagger() {
         observationsProbabilities = new HashMap<>();
         transitionsProbabilities = new HashMap<>();
+        counts = new CountTable();
+        publishModel();
     }
 
-    public void setObservationsProbabilities(Map<String, Map<String, Double>> observationsProbabilities) {
+    /**
+     * Replaces the observations map, keeping the current model's transitions
+     */
+    public synchronized void setObservationsProbabilities(Map<String, Map<String, Double>> observationsProbabilities) {
         this.observationsProbabilities = observationsProbabilities;
+        this.transitionsProbabilities = model.getTransitionsProbabilities();
+        counts = null;
+        publishModel();
     }
 
-    public void setTransitionsProbabilities(Map<String, Map<String, Double>> transitionsProbabilities) {
+    /**
+     * Replaces the transitions map, keeping the current model's observations
+     */
+    public synchronized void setTransitionsProbabilities(Map<String, Map<String, Double>> transitionsProbabilities) {
         this.transitionsProbabilities = transitionsProbabilities;
+        this.observationsProbabilities = model.getObservationsProbabilities();
+        counts = null;
+        publishModel();
+    }
+
+    /**
+     * Saves the current model to a binary file (see ModelFile) so it can be loaded without retraining
+     *
+     * @param fileName name or path of file to write
+     */
+    public void saveModel(String fileName) throws IOException {
+        ModelFile.write(model, fileName);
+    }
+
+    /**
+     * Replaces the current model with one saved by saveModel().
+     * The file is memory-mapped and only its compiled form is built;
+     * the maps are decoded the first time map-based tagging or a setter needs them.
+     *
+     * @param fileName name or path of file written by saveModel()
+     */
+    public synchronized void loadModel(String fileName) throws IOException {
+        model = ModelFile.read(fileName);
+        counts = null;
+        if (trigram) System.out.println("Model files have no trigram counts, tagging with bigrams");
+    }
+
+    /**
+     * Replaces the snapshot used for tagging with a compiled copy of the current maps, then lets go of the maps.
+     * Tagging that is already running keeps the snapshot it started with.
+     */
+    private void publishModel() {
+        model = withCountModels(new TrainedModel(observationsProbabilities, transitionsProbabilities, unseenObservationScore));
+        observationsProbabilities = null; // the snapshot holds the model now
+        transitionsProbabilities = null;
+    }
+
+    /**
+     * Helper method for publishModel(), addTrainingSentences() and the setters of the models below
+     * Adds the models built from the current counts that are turned on (unknown words first, since the trigram model
+     * scores observations through the compiled model). Without counts the snapshot is returned unchanged.
+     */
+    private TrainedModel withCountModels(TrainedModel newModel) {
+        if (counts == null) return newModel;
+        if (unknownWordCacheSize > 0) {
+            UnknownWordModel unknownWords = UnknownWordModel.build(newModel.compiled(), counts, unseenObservationScore, unknownWordCacheSize);
+            unknownWords.setMetrics(metrics);
+            newModel = newModel.withUnknownWordModel(unknownWords);
+        }
+        if (trigram) newModel = newModel.withTrigramModel(TrigramModel.build(newModel.compiled(), counts));
+        return newModel;
+    }
+
+    /**
+     * The trained model is an immutable snapshot: it is safe to tag with from any number of threads,
+     * and fileTraining() or the setters replace it rather than change it.
+     *
+     * @return the snapshot currently used for tagging
+     */
+    public TrainedModel getModel() {
+        return model;
+    }
+
+    /**
+     * Opt in to (or out of) compiled tagging, which is off by default.
+     * Compiled tagging runs on the arrays the model is stored as (see CompiledModel) and gives the same tags as the maps.
+     * Tagging with the maps decodes them from the model the first time, which takes much more memory.
+     * DEBUG output is only printed by map tagging, so tagging always uses the maps while DEBUG is on.
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+        invalidateSentenceCache();
+    }
+
+    /**
+     * Turns on beam-pruned decoding: after each observation only the best beamWidth states within beamMargin
+     * of the best score are carried forward. Beam decoding always runs on the compiled model.
+     * In trigram tagging the beam holds tag pairs rather than states (see TrigramModel).
+     * Use setBeam(Integer.MAX_VALUE, Double.POSITIVE_INFINITY) to go back to exact decoding.
+     *
+     * @param beamWidth most states kept after each observation, at least 1
+     * @param beamMargin largest log-score gap to the best state that is kept, at least 0
+     */
+    public void setBeam(int beamWidth, double beamMargin) {
+        if (beamWidth < 1 || !(beamMargin >= 0)) { // also catches a NaN margin
+            System.out.println("Error, beam width must be at least 1 and margin at least 0, got " + beamWidth + " and " + beamMargin
+                    + ", beam settings unchanged");
+            return;
+        }
+        this.beamWidth = beamWidth;
+        this.beamMargin = beamMargin;
+        invalidateSentenceCache();
+    }
+
+    /**
+     * Turns on tag dictionary pruning: a word seen in training is only given the tags it was seen with,
+     * instead of every tag (most of which would get unseenObservationScore). Unknown words still get every tag.
+     * This is much faster but can change the output where an unseen tag would have won. Always runs on the compiled model.
+     */
+    public void setTagDictionary(boolean tagDictionary) {
+        this.tagDictionary = tagDictionary;
+        invalidateSentenceCache();
+    }
+
+    /**
+     * Opt in to (or out of) SIMD compiled tagging, which is off by default. It needs MaxPlusKernel.VECTOR, so the JVM
+     * needs --add-modules jdk.incubator.vector and vector/VectorMaxPlus.java compiled (see that file).
+     * The tags are bit-for-bit the same either way.
+     */
+    public void setVectorized(boolean vectorized) {
+        if (vectorized && MaxPlusKernel.VECTOR == null) {
+            System.out.println("Error, the vector kernel isn't available on this JVM, tagging stays scalar");
+        }
+        this.kernel = vectorized ? MaxPlusKernel.VECTOR : null;
+    }
+
+    /**
+     * @return whether compiled tagging is running its dense steps on the SIMD kernel
+     */
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    /**
+     * Turns on second-order (trigram) tagging: each tag depends on the two before it, with trigram transitions
+     * interpolated with the bigram and unigram estimates (see CountTable.trigramTransitions() and TrigramModel).
+     * Needs the counts of a model trained by this tagger; set or loaded models keep tagging with bigrams.
+     * Exact trigram tagging visits close to numTags^3 transitions per observation, so it is slow on its own;
+     * setBeam() (a margin of about 7 keeps brown's accuracy) or setTagDictionary() bring it to bigram speed.
+     */
+    public synchronized void setTrigram(boolean trigram) {
+        this.trigram = trigram;
+        if (trigram && model.trigramModel() == null) {
+            if (counts == null) System.out.println("Error, the current model has no raw counts to build trigrams from (it was set or loaded)");
+            else model = withCountModels(model);
+        }
+        invalidateSentenceCache();
+    }
+
+    /**
+     * Turns on the suffix and shape model for words never seen in training (see UnknownWordModel),
+     * in place of the flat unseenObservationScore. Its scores are cached per word; the cache is rebuilt empty
+     * whenever the model is retrained. Needs the counts of a model trained by this tagger.
+     *
+     * @param cacheSize most unknown words whose scores are cached, 0 to go back to the flat score
+     */
+    public synchronized void setUnknownWordModel(int cacheSize) {
+        unknownWordCacheSize = cacheSize;
+        invalidateSentenceCache();
+        if (counts == null) {
+            if (cacheSize > 0) System.out.println("Error, the current model has no raw counts to build an unknown-word model from (it was set or loaded)");
+            return;
+        }
+        model = withCountModels(model.withUnknownWordModel(null));
+    }
+
+    /**
+     * @return the current model's unknown-word model, which has the cache statistics, null if there isn't one
+     */
+    public UnknownWordModel getUnknownWordModel() {
+        return model.isTrained() ? model.compiled().unknownWords() : null;
+    }
+
+    /**
+     * Turns on caching of whole sentences (see SentenceCache): a sentence tagged again, after lowercasing and dropping
+     * trailing spaces, gets its tags from the cache instead of being decoded.
+     * Cached tags are dropped whenever the model is retrained, set or loaded, or a setter changes how sentences are tagged.
+     * Sentences aren't cached while DEBUG is on, so its output is always printed.
+     *
+     * @param capacity most sentences kept, least recently used first out, 0 to turn caching off
+     */
+    public void setSentenceCache(int capacity) {
+        sentenceCache = capacity > 0 ? new SentenceCache(capacity) : null;
+    }
+
+    /**
+     * @return the sentence cache, which has the hit and miss statistics, null if caching is off
+     */
+    public SentenceCache getSentenceCache() {
+        return sentenceCache;
+    }
+
+    /**
+     * Helper method for the setters that change how sentences are tagged without publishing a new model
+     * Called after the change. The settings and the cache's generation are volatile, so a thread that sees the emptied
+     * cache (or a generation made after it) also sees the new setting.
+     */
+    private void invalidateSentenceCache() {
+        SentenceCache cache = sentenceCache;
+        if (cache != null) cache.invalidate();
+    }
+
+    /**
+     * @return true if setBeam() has limited decoding
+     */
+    private boolean beamPruning() {
+        return beamWidth != Integer.MAX_VALUE || beamMargin != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Builds the compiled form of the current model if it hasn't been built yet
+     *
+     * @return the compiled model
+     */
+    public CompiledModel compile() {
+        return model.compiled();
+    }
+
+    /**
+     * Starts a session for tagging an unbounded stream of tokens one at a time (see StreamingTagger).
+     * The session keeps using the current model even if this tagger is retrained.
+     *
+     * @param window most tokens held back waiting for a tag, which bounds the session's memory, at least 1
+     * @return new streaming session, null if window is below 1
+     */
+    public StreamingTagger streamingSession(int window) {
+        if (window < 1) {
+            System.out.println("Error, streaming window must be at least 1, got " + window);
+            return null;
+        }
+        return new StreamingTagger(model.compiled(), window);
+    }
+
+    /**
+     * Sets how many threads batch tagging (tagBatch() and tagFile()) and sharded training use.
+     * Defaults to the common fork-join pool.
+     *
+     * Work already submitted to the old pool finishes on it, then its threads go away.
+     *
+     * @param parallelism number of worker threads, at least 1
+     */
+    public void setBatchParallelism(int parallelism) {
+        if (parallelism < 1) {
+            System.out.println("Error, batch parallelism must be at least 1, got " + parallelism);
+            return;
+        }
+        ForkJoinPool oldPool;
+        synchronized (batchPoolLock) {
+            oldPool = batchPool;
+            batchPool = new ForkJoinPool(parallelism);
+        }
+        if (oldPool != ForkJoinPool.commonPool()) oldPool.shutdown(); // nothing new can be submitted to it now
+    }
+
+    /**
+     * Helper method for tagBatch() and fileTraining()
+     * Submits a task to the batch pool under its lock, so setBatchParallelism() can't shut the pool down in between
+     */
+    private <T> ForkJoinTask<T> submitBatch(Callable<T> task) {
+        synchronized (batchPoolLock) {
+            return batchPool.submit(task);
+        }
+    }
+
+    /**
+     * Turns on metrics: training runs, every tagged sentence and every cache lookup are reported to the given hooks
+     * (see TaggerMetrics, and TaggerStats for an implementation that can be dumped or read over JMX).
+     * With metrics off, which is the default, tagging isn't timed at all.
+     *
+     * @param metrics hooks to report to, null to turn metrics off
+     */
+    public synchronized void setMetrics(TaggerMetrics metrics) {
+        this.metrics = metrics;
+        UnknownWordModel unknownWords = getUnknownWordModel();
+        if (unknownWords != null) unknownWords.setMetrics(metrics);
     }
 
     public void setDEBUG(boolean DEBUG) {
@@ -43,35 +339,40 @@ public class POSTagger {
      * @param sentencesFileName name or path of file containing formatted sentences
      * @param tagsFileName name or path of file containing formatted tags
      */
-    public void fileTraining(String sentencesFileName, String tagsFileName) {
-        try {
-            // open files
-            BufferedReader sentencesFile = new BufferedReader(new FileReader(sentencesFileName));
-            BufferedReader tagsFile = new BufferedReader(new FileReader(tagsFileName));
-
-            // reset maps if they've already been trained
-            if (!observationsProbabilities.isEmpty()) observationsProbabilities = new HashMap<>();
-            if (!transitionsProbabilities.isEmpty()) transitionsProbabilities = new HashMap<>();
+    public synchronized void fileTraining(String sentencesFileName, String tagsFileName) {
+        long start = System.nanoTime();
+        int numSentences = 0;
+        long numTokens = 0;
+        CountTable newCounts = new CountTable();
+        // open files
+        try (LineReader sentencesFile = new LineReader(sentencesFileName);
+             LineReader tagsFile = new LineReader(tagsFileName)) {
+            Tokenizer sentenceTokens = new Tokenizer();
+            Tokenizer tagTokens = new Tokenizer();
+
+            // reset maps, the old ones may belong to a published (unmodifiable) model
+            observationsProbabilities = new HashMap<>();
+            transitionsProbabilities = new HashMap<>();
             transitionsProbabilities.put("#", new HashMap<>()); // initialize and put start state
             // read corresponding lines from the files
-            String currSentence;
-            String currTagLine;
+            CharSequence currSentence;
+            CharSequence currTagLine;
             while (((currSentence = sentencesFile.readLine()) != null) && ((currTagLine = tagsFile.readLine()) != null)) {
                 if (DEBUG) {
                     System.out.println("Training...");
                     System.out.println("\tTraining Sentence: " + currSentence);
                     System.out.println("\tCorresponding Tags: " + currTagLine);
                 }
-                // split the lines into their parts
-                currSentence = currSentence.toLowerCase();
-                String[] observations = currSentence.split(" ");
-                String[] tags = currTagLine.split(" ");
+                // lowercase and split the lines into their parts
+                sentenceTokens.tokenize(currSentence, true);
+                tagTokens.tokenize(currTagLine, false);
+                String[] observations = sentenceTokens.tokens();
+                String[] tags = tagTokens.tokens();
                 // updateCounts method works by sentence to avoid IOExceptions
-                updateCounts(observations, tags);
+                if (updateCounts(observations, tags)) newCounts.addTrigrams(tags); // the maps only hold bigrams
+                numSentences++;
+                numTokens += observations.length;
             }
-
-            sentencesFile.close();
-            tagsFile.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -84,6 +385,8 @@ public class POSTagger {
             System.out.println(transitionsProbabilities);
         }
 
+        newCounts.addCounts(observationsProbabilities, transitionsProbabilities);
+        counts = newCounts; // kept for addTrainingSentences() and trigram tagging
         if (DEBUG) System.out.println("Turning raw counts into probabilities with natural log and normalization...");
 
         for (String tag : transitionsProbabilities.keySet()) { // visit each tag's transition and observation count map
@@ -109,6 +412,127 @@ public class POSTagger {
             System.out.println("\tTransitions Probabilities Map");
             System.out.println("\t" + transitionsProbabilities + "\n");
         }
+        publishModel();
+        reportTraining(numSentences, numTokens, start);
+    }
+
+    /**
+     * Handles training from files by splitting the corpus into shards that are counted in parallel on the batch pool.
+     * Each shard counts into its own CountTable, the tables are merged and only then normalized,
+     * so the trained maps are identical to those from fileTraining(sentencesFileName, tagsFileName).
+     *
+     * @param sentencesFileName name or path of file containing formatted sentences
+     * @param tagsFileName name or path of file containing formatted tags
+     * @param shards number of pieces to split the corpus into, usually the batch pool's parallelism, at least 1
+     */
+    public synchronized void fileTraining(String sentencesFileName, String tagsFileName, int shards) {
+        if (shards < 1) {
+            System.out.println("Error, training needs at least 1 shard, got " + shards + ", training with 1");
+            fileTraining(sentencesFileName, tagsFileName, 1);
+            return;
+        }
+        long start = System.nanoTime();
+        List<String> sentences = new ArrayList<>();
+        List<String> tagLines = new ArrayList<>();
+        try (LineReader sentencesFile = new LineReader(sentencesFileName);
+             LineReader tagsFile = new LineReader(tagsFileName)) {
+            // read corresponding lines from the files
+            CharSequence currSentence;
+            CharSequence currTagLine;
+            while (((currSentence = sentencesFile.readLine()) != null) && ((currTagLine = tagsFile.readLine()) != null)) {
+                sentences.add(currSentence.toString());
+                tagLines.add(currTagLine.toString());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // count each shard of consecutive lines into its own table
+        int shardSize = (sentences.size() + shards - 1) / shards;
+        LongAdder numTokens = new LongAdder();
+        List<CountTable> shardCounts;
+        try {
+            shardCounts = submitBatch(() -> IntStream.range(0, shards).parallel().mapToObj(shard -> {
+                CountTable counts = new CountTable();
+                Tokenizer sentenceTokens = new Tokenizer();
+                Tokenizer tagTokens = new Tokenizer();
+                int end = Math.min(sentences.size(), (shard + 1) * shardSize);
+                for (int line = shard * shardSize; line < end; line++) {
+                    sentenceTokens.tokenize(sentences.get(line), true);
+                    tagTokens.tokenize(tagLines.get(line), false);
+                    counts.addSentence(sentenceTokens.tokens(), tagTokens.tokens());
+                    numTokens.add(sentenceTokens.numTokens());
+                }
+                return counts;
+            }).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("sharded training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("sharded training failed", e.getCause());
+        }
+
+        // merge the shards, then normalize
+        CountTable totalCounts = shardCounts.get(0);
+        for (int shard = 1; shard < shardCounts.size(); shard++) totalCounts.merge(shardCounts.get(shard));
+        if (DEBUG) System.out.println("Merged counts from " + shards + " shards, turning them into probabilities...");
+        counts = totalCounts; // kept for addTrainingSentences()
+        observationsProbabilities = totalCounts.observationsProbabilities();
+        transitionsProbabilities = totalCounts.transitionsProbabilities();
+        if (DEBUG) {
+            System.out.println("Training Finished!");
+            System.out.println("\tObservation Probabilities Map");
+            System.out.println("\t" + observationsProbabilities + "\n");
+            System.out.println("\tTransitions Probabilities Map");
+            System.out.println("\t" + transitionsProbabilities + "\n");
+        }
+        publishModel();
+        reportTraining(sentences.size(), numTokens.sum(), start);
+    }
+
+    /**
+     * Online training: adds annotated sentences to the raw counts behind the current model
+     * and re-normalizes only the states whose counts changed.
+     * The updated model is published copy-on-write, so tagging running at the same time keeps a consistent snapshot
+     * and is never blocked. The new model is compiled before it is published.
+     * Only works on a model trained by this tagger (with fileTraining() or this method), since set or loaded models have no counts.
+     *
+     * @param sentences formatted sentences
+     * @param tagLines formatted tags for each sentence
+     */
+    public synchronized void addTrainingSentences(List<String> sentences, List<String> tagLines) {
+        if (counts == null) {
+            System.out.println("Error, the current model has no raw counts to add to (it was set or loaded)");
+            return;
+        }
+        long start = System.nanoTime();
+        long numTokens = 0;
+        Set<String> changedStates = new HashSet<>();
+        Tokenizer sentenceTokens = new Tokenizer();
+        Tokenizer tagTokens = new Tokenizer();
+        for (int line = 0; line < Math.min(sentences.size(), tagLines.size()); line++) {
+            sentenceTokens.tokenize(sentences.get(line), true);
+            tagTokens.tokenize(tagLines.get(line), false);
+            String[] tags = tagTokens.tokens();
+            if (counts.addSentence(sentenceTokens.tokens(), tags)) {
+                changedStates.add("#");
+                changedStates.addAll(Arrays.asList(tags));
+                numTokens += tags.length;
+            }
+        }
+        if (DEBUG) System.out.println("Re-normalizing states: " + changedStates);
+
+        model = withCountModels(model.withRows(counts.observationsProbabilities(changedStates), counts.transitionsProbabilities(changedStates)));
+        reportTraining(Math.min(sentences.size(), tagLines.size()), numTokens, start);
+    }
+
+    /**
+     * Helper method for fileTraining() and addTrainingSentences()
+     * Tells the metrics, if they are on, about a finished training run
+     */
+    private void reportTraining(int numSentences, long numTokens, long start) {
+        TaggerMetrics metrics = this.metrics;
+        if (metrics != null) metrics.trainingCompleted(numSentences, numTokens, System.nanoTime() - start);
     }
 
     /**
@@ -117,9 +541,13 @@ public class POSTagger {
      *
      * @param observations a sentence in array form (ends with period)
      * @param tags a sentence of tags in array form (ends with period)
+     * @return false if the sentence was skipped because its observations and tags don't match up
      */
-    private void updateCounts(String[] observations, String[] tags) {
-        if (observations.length != tags.length) System.out.println("non-matching number of observations and tags"); // potential error handling
+    private boolean updateCounts(String[] observations, String[] tags) {
+        if (observations.length != tags.length) {
+            System.out.println("non-matching number of observations and tags"); // potential error handling
+            return false;
+        }
         else {
             String currObservation;
             String prevTag = "#"; // default start state
@@ -136,6 +564,7 @@ public class POSTagger {
                 }
                 prevTag = currTag;
             }
+            return true;
         }
     }
 
@@ -208,7 +637,61 @@ public class POSTagger {
     }
 
     public String tagViterbi(String sentence) {
-        if (observationsProbabilities != null && transitionsProbabilities != null) {
+        return tagViterbi(sentence, model);
+    }
+
+    /**
+     * Tags a sentence against one snapshot, so a whole batch is tagged with the same model.
+     * The sentence cache, if it is on, is only used while the snapshot is still the current one.
+     *
+     * @param sentence sentence with a space between every observation
+     * @param model snapshot to tag with
+     * @return tags in sentence form
+     */
+    private String tagViterbi(String sentence, TrainedModel model) {
+        SentenceCache cache = sentenceCache;
+        if (cache == null || DEBUG || model != this.model || !model.isTrained()) return decode(sentence, model);
+        SentenceCache.Generation cached = cache.generation(model); // read before the settings decode() uses
+        if (cached == null) return decode(sentence, model);
+
+        String key = cache.key(sentence);
+        String tags = cached.get(key);
+        TaggerMetrics metrics = this.metrics;
+        if (metrics != null) metrics.cacheLookup("sentences", tags != null);
+        if (tags == null) {
+            tags = decode(sentence, model);
+            cached.put(key, tags);
+        }
+        return tags;
+    }
+
+    /**
+     * Helper method for tagViterbi()
+     * Runs the Viterbi algorithm on a sentence with whichever decoder the settings pick
+     */
+    private String decode(String sentence, TrainedModel model) {
+        if (model.isTrained()) {
+            TaggerMetrics metrics = this.metrics; // read once, so the sentence is reported to the metrics it was timed for
+            long start = metrics == null ? 0 : System.nanoTime();
+            if (trigram && model.trigramModel() != null) {
+                TrigramModel.Workspace workspace = trigramWorkspaces.get();
+                String tags = model.trigramModel().tag(sentence, workspace, beamWidth, beamMargin, tagDictionary);
+                if (metrics != null) {
+                    metrics.sentenceTagged(workspace.numTokens(), workspace.unknownTokens(), workspace.statesExpanded(), System.nanoTime() - start);
+                }
+                return tags;
+            }
+            if ((compiled && !DEBUG) || beamPruning() || tagDictionary) {
+                CompiledModel.Workspace workspace = workspaces.get();
+                String tags = model.compiled().tag(sentence, workspace, beamWidth, beamMargin, tagDictionary, kernel);
+                if (metrics != null) {
+                    metrics.sentenceTagged(workspace.numTokens(), workspace.unknownTokens(), workspace.statesExpanded(), System.nanoTime() - start);
+                }
+                return tags;
+            }
+            Map<String, Map<String, Double>> observationsProbabilities = model.getObservationsProbabilities();
+            Map<String, Map<String, Double>> transitionsProbabilities = model.getTransitionsProbabilities();
+
             sentence = sentence.toLowerCase();
             String[] observations = sentence.split(" "); // split sentence into observations
 
@@ -220,6 +703,7 @@ public class POSTagger {
             // initialize start case
             currStates.add("#");
             currScores.put("#", 0.);
+            long statesExpanded = 0; // only reported to the metrics
 
             // for determining final state from which to back trace
             String finalState = null;
@@ -232,6 +716,7 @@ public class POSTagger {
                 Map<String, String> currBackPointers = new HashMap<>();
 
                 String currObservation = observations[i];
+                statesExpanded += currStates.size();
                 for (String currState : currStates) { // loop over current states (start points)
                     Map<String, Double> possibleTransitions = transitionsProbabilities.get(currState); // get possible transitions (paths)
                     if (possibleTransitions != null) {
@@ -287,9 +772,109 @@ public class POSTagger {
                 System.out.println("\tbackPointerList: " + backPointerList);
                 System.out.println("\ttags: " + formattedTags + "\n");
             }
+            if (metrics != null) {
+                long nanos = System.nanoTime() - start;
+                int unknownTokens = 0;
+                for (String observation : observations) {
+                    if (model.compiled().findObservation(observation) < 0) unknownTokens++;
+                }
+                metrics.sentenceTagged(observations.length, unknownTokens, statesExpanded, nanos);
+            }
             // finally return the formatted string of tags in sentence form
             return formattedTags.toString();
         }
         else return "POSTagger not trained!";
     }
+    /**
+     * Tags a sentence with confidences: the posterior probability of every tag at every token and the N best
+     * tag sequences (see ForwardBackward and ScoredTags). Always runs the exact bigram model on the compiled arrays,
+     * so beam, tag dictionary and trigram settings don't apply, and the best sequence is what exact tagViterbi() gives.
+     *
+     * @param sentence sentence with a space between every observation
+     * @param nBest number of tag sequences wanted, at least 1
+     * @return scored tags, null if the tagger isn't trained or nBest is below 1
+     */
+    public ScoredTags tagWithConfidence(String sentence, int nBest) {
+        if (nBest < 1) {
+            System.out.println("Error, nBest must be at least 1, got " + nBest);
+            return null;
+        }
+        TrainedModel model = this.model;
+        if (!model.isTrained()) {
+            System.out.println("POSTagger not trained!");
+            return null;
+        }
+        return ForwardBackward.tag(model.compiled(), sentence, confidenceWorkspaces.get(), nBest);
+    }
+
+    /**
+     * Tags many sentences across the batch pool (see setBatchParallelism()).
+     * Every sentence is tagged with the snapshot that was current when the call started.
+     *
+     * @param sentences sentences with a space between every observation
+     * @return tags for each sentence, in the same order as the input
+     */
+    public List<String> tagBatch(Iterable<String> sentences) {
+        List<String> sentenceList = new ArrayList<>();
+        for (String sentence : sentences) sentenceList.add(sentence);
+        return tagBatch(sentenceList, model);
+    }
+
+    /**
+     * Stream version of tagBatch(), the stream is fully read before tagging starts
+     *
+     * @param sentences sentences with a space between every observation
+     * @return tags for each sentence, in the same order as the input
+     */
+    public List<String> tagBatch(Stream<String> sentences) {
+        return tagBatch(sentences.collect(Collectors.toList()), model);
+    }
+
+    /**
+     * Helper method for tagBatch() and tagFile()
+     * Tags a list in parallel on the batch pool, results keep the list's order.
+     * Each sentence is decoded on its own: decoding groups of similar-length sentences together, position by position,
+     * measured slower on brown-test at every sentence length, since reused workspaces already keep per-sentence costs small.
+     */
+    private List<String> tagBatch(List<String> sentences, TrainedModel model) {
+        try {
+            return submitBatch(() -> sentences.parallelStream()
+                    .map(sentence -> tagViterbi(sentence, model))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("batch tagging interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("batch tagging failed", e.getCause());
+        }
+    }
+
+    /**
+     * Tags every line of a sentences file in parallel and writes the tags, one line per sentence, to another file.
+     * The file is worked through in blocks so memory use doesn't grow with the file size.
+     *
+     * @param sentencesFileName name or path of file containing formatted sentences
+     * @param tagsFileName name or path of file to write tags to
+     */
+    public void tagFile(String sentencesFileName, String tagsFileName) {
+        TrainedModel model = this.model; // the whole file is tagged with one snapshot
+        try (LineReader sentencesFile = new LineReader(sentencesFileName);
+             BufferedWriter tagsFile = new BufferedWriter(new FileWriter(tagsFileName))) {
+            List<String> block = new ArrayList<>(BATCH_BLOCK_SIZE);
+            CharSequence currSentence = sentencesFile.readLine();
+            while (currSentence != null) {
+                block.add(currSentence.toString());
+                currSentence = sentencesFile.readLine();
+                if (block.size() == BATCH_BLOCK_SIZE || currSentence == null) {
+                    for (String tags : tagBatch(block, model)) {
+                        tagsFile.write(tags.trim());
+                        tagsFile.newLine();
+                    }
+                    block.clear();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+import java.util.*;
+
+/**
+ * Tags of a sentence with how sure the model is of them, from ForwardBackward.
+ * Posteriors give the probability of each tag at each token over every path through the lattice;
+ * the N-best paths are the most likely whole tag sequences, best first, with their log-scores.
+ * The lowest confidence in a sentence is a simple way to pick out sentences that need to be checked by hand.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class ScoredTags {
+    private final CompiledModel model; // tag names
+    private final double[][] posteriors; // [token][tag id]
+    private final String[][] paths; // N best tag sequences, best first
+    private final double[] pathScores; // log-score of each path, as Viterbi scores it
+    private final double logProbability; // log-probability of the sentence summed over every path
+
+    ScoredTags(CompiledModel model, double[][] posteriors, String[][] paths, double[] pathScores, double logProbability) {
+        this.model = model;
+        this.posteriors = posteriors;
+        this.paths = paths;
+        this.pathScores = pathScores;
+        this.logProbability = logProbability;
+    }
+
+    public int length() {
+        return posteriors.length;
+    }
+
+    /**
+     * @return the best tags in sentence form, each followed by a space, the same as tagViterbi() gives
+     *         ("null" for every token if no path reaches the end)
+     */
+    public String bestTags() {
+        if (paths.length == 0) return "null ".repeat(length());
+        return String.join(" ", paths[0]) + " ";
+    }
+
+    /**
+     * @return the tags of the best path, one per token
+     */
+    public String[] bestPath() {
+        return paths.length == 0 ? new String[0] : paths[0].clone();
+    }
+
+    /**
+     * @param token index of the token
+     * @param tag tag name
+     * @return probability that the token has the tag, 0 for tags the model doesn't know
+     */
+    public double posterior(int token, String tag) {
+        for (int tagId = 0; tagId < model.numTags(); tagId++) {
+            if (model.tagName(tagId).equals(tag)) return posteriors[token][tagId];
+        }
+        return 0;
+    }
+
+    /**
+     * @param token index of the token
+     * @param minimum smallest probability to include
+     * @return tag -> probability of every tag at least that likely for the token, most likely first
+     */
+    public Map<String, Double> posteriors(int token, double minimum) {
+        List<Integer> tagIds = new ArrayList<>();
+        for (int tagId = 0; tagId < model.numTags(); tagId++) {
+            if (posteriors[token][tagId] >= minimum && posteriors[token][tagId] > 0) tagIds.add(tagId);
+        }
+        tagIds.sort((a, b) -> Double.compare(posteriors[token][b], posteriors[token][a]));
+        Map<String, Double> tags = new LinkedHashMap<>();
+        for (int tagId : tagIds) tags.put(model.tagName(tagId), posteriors[token][tagId]);
+        return tags;
+    }
+
+    /**
+     * @return posterior probability of the best path's tag at the token
+     */
+    public double confidence(int token) {
+        return paths.length == 0 ? 0 : posterior(token, paths[0][token]);
+    }
+
+    /**
+     * @return the lowest confidence of any token, 1 for an empty sentence
+     */
+    public double minConfidence() {
+        double min = 1;
+        for (int token = 0; token < length(); token++) min = Math.min(min, confidence(token));
+        return min;
+    }
+
+    /**
+     * @return number of paths in the N-best list (fewer than asked for if the lattice didn't have that many)
+     */
+    public int numPaths() {
+        return paths.length;
+    }
+
+    /**
+     * @param rank 0 for the best path
+     * @return the path's tags in sentence form, each followed by a space
+     */
+    public String path(int rank) {
+        return String.join(" ", paths[rank]) + " ";
+    }
+
+    /**
+     * @param rank 0 for the best path
+     * @return the path's log-score (transition plus observation scores, as Viterbi adds them up)
+     */
+    public double pathScore(int rank) {
+        return pathScores[rank];
+    }
+
+    /**
+     * @return log-probability of the sentence over every path, NO_TRANSITION if no path reaches its end
+     */
+    public double getLogProbability() {
+        return logProbability;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Bounded LRU cache of tagged sentences, for input where the same lines come up again and again.
+ * Sentences are keyed on their normalized form (lowercased and split like tagging does), so lines that only differ in
+ * capitalization or trailing spaces share an entry.
+ * Cached tags belong to a Generation, which is tied to one model snapshot. A generation is replaced, and its tags
+ * dropped, when the tagger publishes a new snapshot or changes how it tags; a thread still tagging with the old
+ * snapshot or settings can only add to the old generation, so it never puts stale tags in front of anyone.
+ * Each generation is split into segments like UnknownWordModel's cache, so tagging threads rarely wait for each other.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class SentenceCache {
+    static final int SEGMENTS = 16; // fewer for caches smaller than this
+
+    private final int capacity; // most sentences kept
+    private volatile Generation generation; // null until the first lookup after a change
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ThreadLocal<Tokenizer> tokenizers = ThreadLocal.withInitial(Tokenizer::new); // for normalizing keys
+
+    /**
+     * @param capacity most sentences kept, spread as evenly as possible over the segments
+     */
+    public SentenceCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param model snapshot the caller is tagging with, which should be its tagger's current one
+     * @return the generation of cached tags for that snapshot, a new empty one if the last was for another snapshot
+     */
+    Generation generation(TrainedModel model) {
+        Generation current = generation;
+        if (current != null && current.model == model) return current;
+        synchronized (this) {
+            if (generation == current) generation = new Generation(model);
+            return generation.model == model ? generation : null;
+        }
+    }
+
+    /**
+     * Drops every cached sentence, for when the tagger's settings change but its snapshot doesn't
+     */
+    void invalidate() {
+        generation = null;
+    }
+
+    /**
+     * @return the lowercased sentence without trailing spaces, which tags the same as the sentence
+     */
+    String key(String sentence) {
+        Tokenizer tokenizer = tokenizers.get();
+        tokenizer.tokenize(sentence, true);
+        return tokenizer.joined();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return fraction of lookups answered from the cache since it was made, 0 before the first
+     */
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+
+    /**
+     * Cached tags of one model snapshot (with the tagger's settings at the time)
+     */
+    class Generation {
+        private final TrainedModel model;
+        private final List<LinkedHashMap<String, String>> segments = new ArrayList<>();
+
+        Generation(TrainedModel model) {
+            this.model = model;
+            // segment sizes add up to exactly capacity, with no more segments than sentences so none is empty
+            int numSegments = Math.max(1, Math.min(SEGMENTS, capacity));
+            for (int segment = 0; segment < numSegments; segment++) {
+                int segmentSize = capacity / numSegments + (segment < capacity % numSegments ? 1 : 0);
+                segments.add(new LinkedHashMap<>(16, 0.75f, true) { // access order, so the eldest is least recently used
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                        if (size() <= segmentSize) return false;
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                });
+            }
+        }
+
+        /**
+         * @param key normalized sentence from key()
+         * @return its cached tags, null if it isn't cached
+         */
+        String get(String key) {
+            Map<String, String> segment = segment(key);
+            String tags;
+            synchronized (segment) {
+                tags = segment.get(key);
+            }
+            if (tags != null) hits.incrementAndGet();
+            else misses.incrementAndGet();
+            return tags;
+        }
+
+        void put(String key, String tags) {
+            Map<String, String> segment = segment(key);
+            synchronized (segment) {
+                segment.put(key, tags);
+            }
+        }
+
+        /**
+         * Helper method for get() and put()
+         */
+        private Map<String, String> segment(String key) {
+            return segments.get((key.hashCode() & 0x7fffffff) % segments.size());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+import java.util.*;
+
+/**
+ * Online Viterbi tagging for token streams with no sentence boundaries.
+ * Tokens are pushed one at a time. A tag is emitted as soon as every surviving path agrees on it (the convergence point),
+ * which gives the same tags as running Viterbi over the whole stream at once.
+ * Backpointers are kept in a ring buffer of a fixed window, so memory stays constant however long the stream runs;
+ * if the paths haven't converged when the window is full, the oldest tag is taken from the current best path.
+ * A session is not thread-safe; create one per stream with POSTagger.streamingSession().
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class StreamingTagger {
+    static final double RENORMALIZE_BELOW = -1e4; // scores are shifted back to 0 when the best drops below this, to keep precision
+
+    private final CompiledModel model;
+    private final int window; // most tokens waiting for a tag
+    private final int numTags;
+
+    private double[] currScores; // scores of each state after the latest token
+    private double[] nextScores;
+    private final int[][] backPointers; // ring buffer, row (position % window) holds the backpointers of that position
+    private final double[] observationScratch;
+    private boolean[] traced; // states on some surviving path at the position being traced
+    private boolean[] tracedPrev;
+    private final int[] path; // scratch for backtracing, indexed like backPointers
+
+    private long position = 0; // number of tokens pushed since the last flush
+    private long firstPending = 0; // position of the oldest token without a tag
+    private long forcedTags = 0; // tags emitted because the window was full rather than by convergence
+
+    /**
+     * @param model compiled model to tag with
+     * @param window most tokens held back waiting for the paths to converge, at least 1 (1 is used if it's lower)
+     */
+    public StreamingTagger(CompiledModel model, int window) {
+        if (window < 1) {
+            System.out.println("Error, streaming window must be at least 1, got " + window + ", using 1");
+            window = 1;
+        }
+        this.model = model;
+        this.window = window;
+        this.numTags = model.numTags();
+        currScores = new double[numTags];
+        nextScores = new double[numTags];
+        backPointers = new int[window][numTags];
+        observationScratch = new double[numTags];
+        traced = new boolean[numTags];
+        tracedPrev = new boolean[numTags];
+        path = new int[window];
+        restart();
+    }
+
+    /**
+     * Puts the session back in the start state "#"
+     */
+    private void restart() {
+        Arrays.fill(currScores, CompiledModel.NO_TRANSITION);
+        currScores[model.startState()] = 0.;
+        position = 0;
+        firstPending = 0;
+    }
+
+    /**
+     * @return number of tags emitted early because the window filled up before the paths converged
+     */
+    public long getForcedTags() {
+        return forcedTags;
+    }
+
+    /**
+     * Adds the next token of the stream
+     *
+     * @param token next observation, capitalization does not matter
+     * @return tags that became final because of this token, oldest first (often empty)
+     */
+    public List<String> push(String token) {
+        List<String> finalTags = new ArrayList<>(0);
+        double[] observationScores = model.observationScores(token.toLowerCase(), observationScratch);
+        if (!step(observationScores)) {
+            // no path reaches this token: finish what came before and start over from "#" with it
+            finalTags.addAll(flush());
+            if (!step(observationScores)) { // unreachable even from the start state
+                finalTags.add("null");
+                return finalTags;
+            }
+        }
+        position++;
+
+        if (position - firstPending == window) {
+            // window is full without convergence, take the oldest tag from the best path so far
+            emit(bestState(), position - 1, firstPending + 1, finalTags);
+            forcedTags++;
+        }
+        converge(finalTags);
+        return finalTags;
+    }
+
+    /**
+     * Ends the stream (or a sentence in it), emitting every remaining tag from the best path,
+     * and starts the session over from "#"
+     *
+     * @return the remaining tags, oldest first
+     */
+    public List<String> flush() {
+        List<String> finalTags = new ArrayList<>();
+        if (position > firstPending) emit(bestState(), position - 1, position, finalTags);
+        restart();
+        return finalTags;
+    }
+
+    /**
+     * Helper method for push()
+     * Advances the scores by one observation, writing backpointers into the ring buffer
+     *
+     * @return false (leaving the scores unchanged) if no state can be reached
+     */
+    private boolean step(double[] observationScores) {
+        int[] currBackPointers = backPointers[(int) (position % window)];
+        Arrays.fill(nextScores, CompiledModel.NO_TRANSITION);
+        double bestScore = CompiledModel.NO_TRANSITION;
+        for (int currState = 0; currState < numTags; currState++) {
+            double currScore = currScores[currState];
+            if (currScore == CompiledModel.NO_TRANSITION) continue;
+            double[] possibleTransitions = model.transitionRow(currState);
+            for (int nextState = 0; nextState < numTags; nextState++) {
+                double transitionScore = possibleTransitions[nextState];
+                if (transitionScore == CompiledModel.NO_TRANSITION) continue;
+                double nextScore = currScore + transitionScore + observationScores[nextState];
+                if (nextScore > nextScores[nextState]) {
+                    nextScores[nextState] = nextScore;
+                    currBackPointers[nextState] = currState;
+                    bestScore = Math.max(bestScore, nextScore);
+                }
+            }
+        }
+        if (bestScore == CompiledModel.NO_TRANSITION) return false;
+
+        if (bestScore < RENORMALIZE_BELOW) { // shifting every score keeps the same best path
+            for (int state = 0; state < numTags; state++) nextScores[state] -= bestScore;
+        }
+        double[] temp = currScores;
+        currScores = nextScores;
+        nextScores = temp;
+        return true;
+    }
+
+    /**
+     * Helper method for push()
+     * Traces every surviving state back until they all share one state, then emits everything up to that point
+     */
+    private void converge(List<String> finalTags) {
+        long at = position - 1;
+        int survivors = 0;
+        int lastSurvivor = -1;
+        for (int state = 0; state < numTags; state++) {
+            traced[state] = currScores[state] != CompiledModel.NO_TRANSITION;
+            if (traced[state]) {
+                survivors++;
+                lastSurvivor = state;
+            }
+        }
+        while (survivors > 1 && at > firstPending) {
+            // step the traced set back one position
+            int[] atBackPointers = backPointers[(int) (at % window)];
+            Arrays.fill(tracedPrev, false);
+            survivors = 0;
+            for (int state = 0; state < numTags; state++) {
+                if (traced[state] && !tracedPrev[atBackPointers[state]]) {
+                    tracedPrev[atBackPointers[state]] = true;
+                    survivors++;
+                    lastSurvivor = atBackPointers[state];
+                }
+            }
+            boolean[] temp = traced;
+            traced = tracedPrev;
+            tracedPrev = temp;
+            at--;
+        }
+        if (survivors == 1 && at >= firstPending) emit(lastSurvivor, at, at + 1, finalTags);
+    }
+
+    /**
+     * Backtraces from a state and emits the tags of every pending position before a cutoff
+     *
+     * @param state state at position from
+     * @param from position to start the backtrace at
+     * @param until first position not to emit
+     */
+    private void emit(int state, long from, long until, List<String> finalTags) {
+        for (long at = from; at >= firstPending; at--) {
+            path[(int) (at % window)] = state;
+            state = backPointers[(int) (at % window)][state];
+        }
+        for (long at = firstPending; at < until; at++) finalTags.add(model.tagName(path[(int) (at % window)]));
+        firstPending = until;
+    }
+
+    /**
+     * @return the best scoring state after the latest token
+     */
+    private int bestState() {
+        int best = 0;
+        for (int state = 1; state < numTags; state++) {
+            if (currScores[state] > currScores[best]) best = state;
+        }
+        return best;
+    }
+}
\ No newline at end of file
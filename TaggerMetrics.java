@@ -0,0 +1,42 @@
+/**
+ * Hooks that POSTagger calls while it trains and tags, so a tagger can be watched while it is in use.
+ * Metrics are off until an implementation is given to POSTagger.setMetrics(); while they are off the tagger only
+ * checks one field, so tagging costs the same as before. Hooks are called from every tagging thread at once,
+ * so implementations must be thread-safe and quick. Every hook does nothing unless overridden.
+ * TaggerStats is the implementation that comes with the tagger.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public interface TaggerMetrics {
+    /**
+     * Called after fileTraining() or addTrainingSentences() finishes
+     *
+     * @param sentences number of sentences counted
+     * @param tokens number of observations counted
+     * @param nanos time taken, including normalizing and publishing the model
+     */
+    default void trainingCompleted(int sentences, long tokens, long nanos) {
+    }
+
+    /**
+     * Called after each sentence is decoded, from the thread that decoded it
+     * (sentences answered by the sentence cache are only reported to cacheLookup())
+     *
+     * @param tokens number of observations in the sentence
+     * @param unknownTokens observations that weren't in the vocabulary
+     * @param statesExpanded reachable states (or tag pairs, for trigram tagging) that were extended, summed over the sentence
+     * @param nanos time taken to tag the sentence
+     */
+    default void sentenceTagged(int tokens, int unknownTokens, long statesExpanded, long nanos) {
+    }
+
+    /**
+     * Called on every lookup in one of the tagger's caches
+     *
+     * @param cache name of the cache, "sentences" or "unknown words"
+     * @param hit true if the lookup was answered from the cache
+     */
+    default void cacheLookup(String cache, boolean hit) {
+    }
+}
\ No newline at end of file
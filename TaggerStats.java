@@ -0,0 +1,174 @@
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * TaggerMetrics that adds everything up with LongAdders, so tagging threads don't contend for one counter.
+ * Sentence latencies go into a histogram of power-of-two microsecond buckets, and percentiles are read as the upper
+ * bound of the bucket they fall in (so they are exact to within a factor of two).
+ * The totals can be printed with dump() or read over JMX after register().
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class TaggerStats implements TaggerMetrics, TaggerStatsMBean {
+    static final int LATENCY_BUCKETS = 32; // bucket i holds latencies below 2^i microseconds (and at least 2^(i - 1))
+
+    private final LongAdder trainedSentences = new LongAdder();
+    private final LongAdder trainedTokens = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+    private final LongAdder taggedSentences = new LongAdder();
+    private final LongAdder taggedTokens = new LongAdder();
+    private final LongAdder unknownTokens = new LongAdder();
+    private final LongAdder statesExpanded = new LongAdder();
+    private final LongAdder taggingNanos = new LongAdder();
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS];
+    private final Map<String, LongAdder[]> caches = new ConcurrentHashMap<>(); // cache name -> {hits, misses}
+
+    public TaggerStats() {
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) latencyBuckets[bucket] = new LongAdder();
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server
+     *
+     * @param name name the tagger is listed under, for telling taggers apart
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("POSTagger:type=TaggerStats,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public void trainingCompleted(int sentences, long tokens, long nanos) {
+        trainedSentences.add(sentences);
+        trainedTokens.add(tokens);
+        trainingNanos.add(nanos);
+    }
+
+    @Override
+    public void sentenceTagged(int tokens, int unknownTokens, long statesExpanded, long nanos) {
+        taggedSentences.increment();
+        taggedTokens.add(tokens);
+        this.unknownTokens.add(unknownTokens);
+        this.statesExpanded.add(statesExpanded);
+        taggingNanos.add(nanos);
+        long micros = nanos / 1000;
+        latencyBuckets[Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+    }
+
+    @Override
+    public void cacheLookup(String cache, boolean hit) {
+        LongAdder[] counts = caches.get(cache);
+        if (counts == null) counts = caches.computeIfAbsent(cache, key -> new LongAdder[]{new LongAdder(), new LongAdder()});
+        counts[hit ? 0 : 1].increment();
+    }
+
+    public long getTrainedSentences() {
+        return trainedSentences.sum();
+    }
+
+    public double getTrainingSentencesPerSecond() {
+        long nanos = trainingNanos.sum();
+        return nanos == 0 ? 0 : trainedSentences.sum() / (nanos / 1e9);
+    }
+
+    public long getTaggedSentences() {
+        return taggedSentences.sum();
+    }
+
+    public long getTaggedTokens() {
+        return taggedTokens.sum();
+    }
+
+    public double getMeanLatencyMicros() {
+        long sentences = taggedSentences.sum();
+        return sentences == 0 ? 0 : taggingNanos.sum() / 1e3 / sentences;
+    }
+
+    public double getLatencyP50Micros() {
+        return latencyPercentile(0.50);
+    }
+
+    public double getLatencyP99Micros() {
+        return latencyPercentile(0.99);
+    }
+
+    /**
+     * Helper method for the latency getters
+     *
+     * @param fraction fraction of sentences that were tagged at least as fast, such as 0.99
+     * @return upper bound in microseconds of the bucket the percentile falls in, 0 if nothing was tagged
+     */
+    private double latencyPercentile(double fraction) {
+        long[] counts = new long[LATENCY_BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+            counts[bucket] = latencyBuckets[bucket].sum();
+            total += counts[bucket];
+        }
+        if (total == 0) return 0;
+        long seen = 0;
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= Math.ceil(fraction * total)) return 1L << bucket;
+        }
+        return 1L << (LATENCY_BUCKETS - 1);
+    }
+
+    public double getStatesExpandedPerToken() {
+        long tokens = taggedTokens.sum();
+        return tokens == 0 ? 0 : (double) statesExpanded.sum() / tokens;
+    }
+
+    public double getUnknownTokenRate() {
+        long tokens = taggedTokens.sum();
+        return tokens == 0 ? 0 : (double) unknownTokens.sum() / tokens;
+    }
+
+    /**
+     * @param cache name of the cache, as passed to cacheLookup()
+     * @return fraction of the cache's lookups that were hits, 0 if it was never used
+     */
+    public double getCacheHitRate(String cache) {
+        LongAdder[] counts = caches.get(cache);
+        if (counts == null) return 0;
+        long hits = counts[0].sum();
+        long lookups = hits + counts[1].sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return every statistic as plain text, one per line
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("training: %d sentences, %d tokens, %.0f sentences/sec%n",
+                getTrainedSentences(), trainedTokens.sum(), getTrainingSentencesPerSecond()));
+        text.append(String.format("tagging: %d sentences, %d tokens, %.0f sentences/sec of tagging time%n",
+                getTaggedSentences(), getTaggedTokens(), getMeanLatencyMicros() == 0 ? 0 : 1e6 / getMeanLatencyMicros()));
+        text.append(String.format("latency: mean %.1f us, p50 < %.0f us, p99 < %.0f us%n",
+                getMeanLatencyMicros(), getLatencyP50Micros(), getLatencyP99Micros()));
+        text.append(String.format("states expanded per token: %.2f%n", getStatesExpandedPerToken()));
+        text.append(String.format("unknown tokens: %.2f%%%n", 100 * getUnknownTokenRate()));
+        for (String cache : new TreeSet<>(caches.keySet())) {
+            LongAdder[] counts = caches.get(cache);
+            text.append(String.format("%s cache: %.1f%% hit rate, %d hits, %d misses%n",
+                    cache, 100 * getCacheHitRate(cache), counts[0].sum(), counts[1].sum()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Sets every statistic back to 0
+     */
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{trainedSentences, trainedTokens, trainingNanos, taggedSentences,
+                taggedTokens, unknownTokens, statesExpanded, taggingNanos}) {
+            adder.reset();
+        }
+        for (LongAdder bucket : latencyBuckets) bucket.reset();
+        caches.clear();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,31 @@
+/**
+ * Management interface of TaggerStats, so the statistics can be read over JMX (for example in JConsole)
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public interface TaggerStatsMBean {
+    long getTrainedSentences();
+
+    double getTrainingSentencesPerSecond();
+
+    long getTaggedSentences();
+
+    long getTaggedTokens();
+
+    double getMeanLatencyMicros();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP99Micros();
+
+    double getStatesExpandedPerToken();
+
+    double getUnknownTokenRate();
+
+    double getCacheHitRate(String cache);
+
+    String dump();
+
+    void reset();
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Local HTTP service for a trained POSTagger, built on the JDK's com.sun.net.httpserver.
+ *   POST /tag     body is one sentence per line (UTF-8), answers {"tags":[["DET","N",...],...]} with one array per line
+ *   GET  /health  answers {"status":"ok"}
+ *   GET  /stats   answers the number of requests, sentences and batches served so far
+ * Requests are micro-batched: a single batcher thread takes the first waiting request, then keeps collecting
+ * requests until it has maxBatch sentences or maxWait has passed, and tags them all with one tagBatch() call.
+ * Exchanges are handled on virtual threads when the JDK has them (21 and later, found by reflection so the tagger
+ * still builds on 17); otherwise on a cached thread pool, which behaves the same at the concurrency a local service sees.
+ * A request that isn't tagged within REQUEST_TIMEOUT_SECONDS, or is still waiting when the server stops, gets a 503.
+ * Start the JVM with -Dsun.net.httpserver.nodelay=true (main() sets it, see setNoDelay()), or every answer waits out
+ * the client's delayed ACK. LoadTest is the matching client.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class TaggingServer {
+    static final long REQUEST_TIMEOUT_SECONDS = 30; // longest a request waits to be tagged before it gets a 503
+
+    private final POSTagger tagger;
+    private final int maxBatch; // most sentences tagged in one call
+    private final long maxWaitNanos; // longest the first request of a batch waits for others
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+    private final Thread batcher;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong sentences = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean stopped = false; // set by stop(), requests arriving after it are turned away
+
+    /**
+     * Turns on TCP_NODELAY for every com.sun.net.httpserver server in this JVM, unless the property was already given.
+     * Answers are written as headers then body, which otherwise waits out the client's delayed ACK (about 40 ms)
+     * on every request. The JDK reads the property once, so call this before the first server is made.
+     */
+    static void setNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * A request waiting to be tagged
+     */
+    private static class PendingRequest {
+        final List<String> sentences;
+        final CompletableFuture<List<String>> tags = new CompletableFuture<>();
+
+        PendingRequest(List<String> sentences) {
+            this.sentences = sentences;
+        }
+    }
+
+    /**
+     * Binds the server to a port on localhost, start() starts serving
+     *
+     * @param tagger trained tagger, tagged with as it is set up (it may be retrained while serving)
+     * @param port port to listen on, 0 for any free port (see getPort())
+     * @param maxBatch most sentences tagged in one call, 1 to tag each request on its own (1 is used if it's lower)
+     * @param maxWaitMicros longest a request waits for others to batch with, in microseconds (0 is used if it's negative)
+     */
+    public TaggingServer(POSTagger tagger, int port, int maxBatch, long maxWaitMicros) throws IOException {
+        if (maxBatch < 1) {
+            System.out.println("Error, max batch must be at least 1, got " + maxBatch + ", using 1");
+            maxBatch = 1;
+        }
+        if (maxWaitMicros < 0) {
+            System.out.println("Error, max wait can't be negative, got " + maxWaitMicros + ", using 0");
+            maxWaitMicros = 0;
+        }
+        this.tagger = tagger;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitMicros * 1000;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        handlers = handlerExecutor();
+        server.setExecutor(handlers);
+        server.createContext("/tag", this::handleTag);
+        server.createContext("/health", exchange -> respond(exchange, 200, "{\"status\":\"ok\"}"));
+        server.createContext("/stats", exchange -> respond(exchange, 200, String.format(
+                "{\"requests\":%d,\"sentences\":%d,\"batches\":%d}", requests.get(), sentences.get(), batches.get())));
+        batcher = new Thread(this::batchLoop, "tagging-batcher");
+        batcher.setDaemon(true);
+    }
+
+    /**
+     * Helper method for the Constructor
+     * Uses a virtual thread per exchange if this JDK has them, otherwise a cached thread pool
+     */
+    private static ExecutorService handlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        batcher.start();
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting up to a second for those being answered.
+     * Requests still waiting to be tagged after that are answered with a 503.
+     */
+    public void stop() {
+        stopped = true;
+        server.stop(1);
+        batcher.interrupt();
+        for (PendingRequest request : queue) request.tags.cancel(false);
+        handlers.shutdown();
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return average number of sentences tagged per batch so far
+     */
+    public double getMeanBatchSize() {
+        return batches.get() == 0 ? 0 : (double) sentences.get() / batches.get();
+    }
+
+    /**
+     * Handles POST /tag on an exchange thread, which waits for the batcher to tag its sentences
+     */
+    private void handleTag(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "{\"error\":\"POST one sentence per line\"}");
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        BufferedReader body = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = body.readLine()) != null) lines.add(line);
+        body.close();
+
+        PendingRequest request = new PendingRequest(lines);
+        queue.add(request);
+        if (stopped) request.tags.cancel(false); // stop() may have emptied the queue before it was added
+        try {
+            respond(exchange, 200, toJson(request.tags.get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"error\":\"server stopping\"}");
+        } catch (CancellationException e) {
+            respond(exchange, 503, "{\"error\":\"server stopping\"}");
+        } catch (TimeoutException e) {
+            request.tags.cancel(false); // so the batcher skips it if it hasn't taken it yet
+            respond(exchange, 503, "{\"error\":\"timed out waiting to be tagged\"}");
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "{\"error\":" + jsonString(String.valueOf(e.getCause())) + "}");
+        }
+    }
+
+    /**
+     * Runs on the batcher thread: gathers waiting requests into batches and tags each batch with one call
+     */
+    private void batchLoop() {
+        List<PendingRequest> batch = new ArrayList<>();
+        List<String> batchSentences = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                PendingRequest first = queue.take();
+                batch.add(first);
+                int size = first.sentences.size();
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (size < maxBatch) {
+                    PendingRequest next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break; // waited long enough
+                    batch.add(next);
+                    size += next.sentences.size();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch.removeIf(request -> request.tags.isDone()); // timed out or cancelled while waiting
+            if (batch.isEmpty()) continue;
+
+            // tag every sentence of the batch at once, then hand each request its share
+            for (PendingRequest request : batch) batchSentences.addAll(request.sentences);
+            try {
+                List<String> tags = batchSentences.size() == 1 ? List.of(tagger.tagViterbi(batchSentences.get(0))) : tagger.tagBatch(batchSentences);
+                int from = 0;
+                for (PendingRequest request : batch) {
+                    request.tags.complete(tags.subList(from, from + request.sentences.size()));
+                    from += request.sentences.size();
+                }
+            } catch (RuntimeException e) {
+                for (PendingRequest request : batch) request.tags.completeExceptionally(e);
+            }
+            requests.addAndGet(batch.size());
+            sentences.addAndGet(batchSentences.size());
+            batches.incrementAndGet();
+            batch.clear();
+            batchSentences.clear();
+        }
+        for (PendingRequest request : queue) request.tags.cancel(false);
+    }
+
+    /**
+     * Helper method for the handlers
+     */
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @param tagLines tags in sentence form, one per sentence
+     * @return {"tags":[[...],...]} with each sentence's tags as an array of strings
+     */
+    public static String toJson(List<String> tagLines) {
+        StringBuilder json = new StringBuilder("{\"tags\":[");
+        for (int line = 0; line < tagLines.size(); line++) {
+            if (line > 0) json.append(',');
+            json.append('[');
+            String[] tags = tagLines.get(line).isEmpty() ? new String[0] : tagLines.get(line).split(" ");
+            for (int tag = 0; tag < tags.length; tag++) {
+                if (tag > 0) json.append(',');
+                json.append(jsonString(tags[tag]));
+            }
+            json.append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Helper method for toJson()
+     * Quotes a string for JSON, escaping quotes, backslashes and control characters
+     */
+    private static String jsonString(String string) {
+        StringBuilder json = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Serves a model until the process is stopped
+     *
+     * @param args a model file written by POSTagger.saveModel() (or a training sentences file and tags file),
+     *             then optionally the port (8080), max batch (64) and max wait in microseconds (500)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java TaggingServer modelFile|trainSentences trainTags [port] [maxBatch] [maxWaitMicros]");
+            return;
+        }
+        setNoDelay();
+        POSTagger tagger = new POSTagger();
+        tagger.setCompiled(true);
+        int next;
+        if (args.length > 1 && !args[1].matches("\\d+")) {
+            tagger.fileTraining(args[0], args[1]);
+            next = 2;
+        }
+        else {
+            tagger.loadModel(args[0]);
+            next = 1;
+        }
+        int port = args.length > next ? Integer.parseInt(args[next]) : 8080;
+        int maxBatch = args.length > next + 1 ? Integer.parseInt(args[next + 1]) : 64;
+        long maxWaitMicros = args.length > next + 2 ? Long.parseLong(args[next + 2]) : 500;
+        TaggingServer server = new TaggingServer(tagger, port, maxBatch, maxWaitMicros);
+        server.start();
+        System.out.println("Tagging on http://localhost:" + server.getPort() + "/tag (max batch " + maxBatch + ", max wait " + maxWaitMicros + " us)");
+    }
+}
\ No newline at end of file
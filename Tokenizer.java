@@ -0,0 +1,119 @@
+import java.util.*;
+
+/**
+ * Lowercases and splits a line on single spaces in one pass into a reusable char buffer.
+ * Gives the same tokens as line.toLowerCase().split(" ") (empty tokens between spaces are kept, trailing ones dropped)
+ * without making a String for the line or any token; tokens are only turned into Strings when asked for,
+ * and can be looked up in a Vocabulary or model straight from the buffer.
+ * A Tokenizer is reused from line to line, so it must not be shared between threads.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class Tokenizer {
+    // lowercasing ASCII a char at a time matches toLowerCase() except in the few locales with special rules for 'I'
+    private static final boolean ASCII_LOWERCASE = !Arrays.asList("tr", "az", "lt").contains(Locale.getDefault().getLanguage());
+
+    private char[] chars = new char[256]; // the (lowercased) line
+    private int[] starts = new int[64]; // start of each token in chars
+    private int[] ends = new int[64]; // end (exclusive) of each token in chars
+    private int numTokens = 0;
+
+    /**
+     * Splits a line, replacing the previous one
+     *
+     * @param line line to split
+     * @param lowercase whether to lowercase the line first, as tagging and training do for sentences
+     * @return number of tokens
+     */
+    public int tokenize(CharSequence line, boolean lowercase) {
+        int length = line.length();
+        if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+        boolean copied = true;
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (lowercase && (c >= 0x80 || !ASCII_LOWERCASE)) { // rare, leave it to toLowerCase()
+                copied = false;
+                break;
+            }
+            chars[i] = lowercase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        if (!copied) {
+            String lowered = line.toString().toLowerCase(); // may change the length
+            length = lowered.length();
+            if (chars.length < length) chars = new char[length];
+            lowered.getChars(0, length, chars, 0);
+        }
+
+        numTokens = 0;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == ' ') {
+                addToken(start, i);
+                start = i + 1;
+            }
+        }
+        if (numTokens == 0) { // no spaces, the whole line is the only token (even if empty)
+            addToken(0, length);
+            return numTokens;
+        }
+        addToken(start, length);
+        while (numTokens > 0 && starts[numTokens - 1] == ends[numTokens - 1]) numTokens--; // drop trailing empty tokens
+        return numTokens;
+    }
+
+    /**
+     * Helper method for tokenize()
+     */
+    private void addToken(int start, int end) {
+        if (numTokens == starts.length) {
+            starts = Arrays.copyOf(starts, numTokens * 2);
+            ends = Arrays.copyOf(ends, numTokens * 2);
+        }
+        starts[numTokens] = start;
+        ends[numTokens] = end;
+        numTokens++;
+    }
+
+    public int numTokens() {
+        return numTokens;
+    }
+
+    /**
+     * @return buffer holding the tokens, shared and only valid until the next tokenize()
+     */
+    public char[] chars() {
+        return chars;
+    }
+
+    public int start(int token) {
+        return starts[token];
+    }
+
+    public int length(int token) {
+        return ends[token] - starts[token];
+    }
+
+    /**
+     * @return the token as a new String
+     */
+    public String token(int token) {
+        return new String(chars, starts[token], ends[token] - starts[token]);
+    }
+
+    /**
+     * @return the tokens joined by single spaces as one new String, which is the (lowercased) line without trailing spaces
+     */
+    public String joined() {
+        return numTokens == 0 ? "" : new String(chars, 0, ends[numTokens - 1]);
+    }
+
+    /**
+     * @return every token as a new String, like split() would give
+     */
+    public String[] tokens() {
+        String[] tokens = new String[numTokens];
+        for (int token = 0; token < numTokens; token++) tokens[token] = token(token);
+        return tokens;
+    }
+}
\ No newline at end of file
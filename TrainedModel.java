@@ -0,0 +1,170 @@
+import java.util.*;
+
+/**
+ * Immutable snapshot of a trained POSTagger model.
+ * POSTagger publishes a new snapshot after every fileTraining() or setter call and never changes one afterwards,
+ * so any number of threads can tag with a snapshot while the tagger is being retrained.
+ * Once both maps are supplied the snapshot only keeps its compiled form (see CompiledModel), where every word is stored once
+ * in a Vocabulary with sparse (tag id, score) arrays. The maps are decoded from it, as unmodifiable maps, if they are asked for.
+ * Later changes to the maps given to the setters are not seen.
+ * A snapshot may also carry a TrigramModel and an UnknownWordModel built from the same training counts.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public final class TrainedModel {
+    private volatile Map<String, Map<String, Double>> observationsProbabilities; // null if never supplied (or not decoded yet)
+    private volatile Map<String, Map<String, Double>> transitionsProbabilities; // null if never supplied (or not decoded yet)
+    private final double unseenObservationScore;
+    private final CompiledModel compiledModel; // null until both maps are supplied
+    private final TrigramModel trigramModel; // null unless added with withTrigramModel()
+
+    public TrainedModel(Map<String, Map<String, Double>> observationsProbabilities,
+                        Map<String, Map<String, Double>> transitionsProbabilities,
+                        double unseenObservationScore) {
+        this.unseenObservationScore = unseenObservationScore;
+        this.trigramModel = null;
+        if (observationsProbabilities != null && transitionsProbabilities != null) {
+            compiledModel = CompiledModel.compile(observationsProbabilities, transitionsProbabilities, unseenObservationScore);
+        }
+        else { // can't be compiled yet, keep whichever map was supplied
+            compiledModel = null;
+            this.observationsProbabilities = frozenCopy(observationsProbabilities);
+            this.transitionsProbabilities = frozenCopy(transitionsProbabilities);
+        }
+    }
+
+    /**
+     * Constructor for a model that is already compiled, such as one loaded by ModelFile
+     *
+     * @param compiledModel compiled form of the model
+     * @param unseenObservationScore score given to an observation never seen with a state
+     */
+    TrainedModel(CompiledModel compiledModel, double unseenObservationScore) {
+        this(compiledModel, null, unseenObservationScore);
+    }
+
+    /**
+     * Constructor for a compiled model with a trigram model
+     */
+    private TrainedModel(CompiledModel compiledModel, TrigramModel trigramModel, double unseenObservationScore) {
+        this.compiledModel = compiledModel;
+        this.trigramModel = trigramModel;
+        this.unseenObservationScore = unseenObservationScore;
+    }
+
+    /**
+     * @param unknownWords model for words outside the vocabulary, built for this snapshot's compiled model
+     * @return a snapshot the same as this one (which must be trained) that scores unknown words with the model,
+     *         without a trigram model since that one was built on the old compiled model
+     */
+    public TrainedModel withUnknownWordModel(UnknownWordModel unknownWords) {
+        return new TrainedModel(compiledModel.withUnknownWords(unknownWords), null, unseenObservationScore);
+    }
+
+    /**
+     * @param trigramModel second-order transitions built for this snapshot's compiled model
+     * @return a snapshot the same as this one (which must be trained) that also carries the trigram model
+     */
+    public TrainedModel withTrigramModel(TrigramModel trigramModel) {
+        return new TrainedModel(compiledModel, trigramModel, unseenObservationScore);
+    }
+
+    /**
+     * Copy-on-write update: makes a new snapshot with the same rows as this one except those given.
+     * This snapshot is left unchanged for anyone still tagging with it.
+     *
+     * @param observationRows state -> observation -> score for each state whose observations changed
+     * @param transitionRows state -> next state -> score for each state whose transitions changed
+     * @return the updated snapshot (without a trigram model), this one must be trained
+     */
+    public TrainedModel withRows(Map<String, Map<String, Double>> observationRows,
+                                 Map<String, Map<String, Double>> transitionRows) {
+        return new TrainedModel(compiledModel.withRows(observationRows, transitionRows, unseenObservationScore), unseenObservationScore);
+    }
+
+    /**
+     * Helper method for the Constructor
+     * Deep copies a map of maps into unmodifiable maps
+     */
+    private static Map<String, Map<String, Double>> frozenCopy(Map<String, Map<String, Double>> outerMap) {
+        if (outerMap == null) return null;
+        Map<String, Map<String, Double>> copy = new HashMap<>();
+        for (Map.Entry<String, Map<String, Double>> entry : outerMap.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableMap(new HashMap<>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public Map<String, Map<String, Double>> getObservationsProbabilities() {
+        if (observationsProbabilities == null && compiledModel != null) {
+            synchronized (this) {
+                if (observationsProbabilities == null) observationsProbabilities = decodeObservations();
+            }
+        }
+        return observationsProbabilities;
+    }
+
+    public Map<String, Map<String, Double>> getTransitionsProbabilities() {
+        if (transitionsProbabilities == null && compiledModel != null) {
+            synchronized (this) {
+                if (transitionsProbabilities == null) transitionsProbabilities = decodeTransitions();
+            }
+        }
+        return transitionsProbabilities;
+    }
+
+    /**
+     * Helper method for getObservationsProbabilities()
+     * Rebuilds the observations map from the compiled model's vocabulary
+     */
+    private Map<String, Map<String, Double>> decodeObservations() {
+        Map<String, Map<String, Double>> observations = new HashMap<>();
+        compiledModel.forEachObservation((word, tagId, score) ->
+                observations.computeIfAbsent(compiledModel.tagName(tagId), key -> new HashMap<>()).put(word, score));
+        return frozenCopy(observations);
+    }
+
+    /**
+     * Helper method for getTransitionsProbabilities()
+     * Rebuilds the transitions map from the compiled model's transition matrix
+     */
+    private Map<String, Map<String, Double>> decodeTransitions() {
+        Map<String, Map<String, Double>> transitions = new HashMap<>();
+        for (int from = 0; from < compiledModel.numTags(); from++) {
+            if (!compiledModel.hasTransitions(from)) continue;
+            Map<String, Double> stateTransitions = new HashMap<>();
+            for (int to = 0; to < compiledModel.numTags(); to++) {
+                double score = compiledModel.transitionScore(from, to);
+                if (score != CompiledModel.NO_TRANSITION) stateTransitions.put(compiledModel.tagName(to), score);
+            }
+            transitions.put(compiledModel.tagName(from), stateTransitions);
+        }
+        return frozenCopy(transitions);
+    }
+
+    public double getUnseenObservationScore() {
+        return unseenObservationScore;
+    }
+
+    /**
+     * @return true if both maps have been supplied
+     */
+    public boolean isTrained() {
+        return compiledModel != null;
+    }
+
+    /**
+     * @return the compiled form of this snapshot, null if it isn't trained
+     */
+    public CompiledModel compiled() {
+        return compiledModel;
+    }
+
+    /**
+     * @return the second-order model of this snapshot, null if it doesn't have one
+     */
+    public TrigramModel trigramModel() {
+        return trigramModel;
+    }
+}
\ No newline at end of file
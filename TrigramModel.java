@@ -0,0 +1,321 @@
+import java.util.*;
+
+/**
+ * Second-order HMM tagging: each tag depends on the two tags before it.
+ * Transition scores come from CountTable.trigramTransitions() and observation scores from a CompiledModel,
+ * so both use the same tag ids. Viterbi runs over a lattice of tag pairs, where only pairs that can actually be reached
+ * (and were seen as bigrams in training) are visited, instead of every one of numTags^3 combinations per observation.
+ * On a corpus where nearly every tag pair is seen that is still close to numTags^3, so tag() can also keep a beam
+ * of the best pairs after each observation, the way CompiledModel.tag() keeps a beam of states.
+ * A TrigramModel is never modified after it is built.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class TrigramModel {
+    private final CompiledModel model; // tag names and observation scores
+    private final double[] transitions; // (first * numTags + second) * numTags + next, NO_TRANSITION for unreachable pairs
+    private final int[][] successors; // successors[second] lists the next tags any pair ending in second can move to
+    private final int numTags;
+
+    /**
+     * @param model compiled model giving the tag ids and observation scores
+     * @param transitions trigram log-scores indexed with the model's tag ids, from CountTable.trigramTransitions()
+     */
+    public TrigramModel(CompiledModel model, double[] transitions) {
+        this.model = model;
+        this.transitions = transitions;
+        this.numTags = model.numTags();
+
+        // only the (second, next) pairs seen in training have scores, so most next tags never need to be looked at
+        successors = new int[numTags][];
+        for (int second = 0; second < numTags; second++) {
+            int[] nextTags = new int[numTags];
+            int numNext = 0;
+            for (int next = 0; next < numTags; next++) {
+                for (int first = 0; first < numTags; first++) {
+                    if (transitions[(first * numTags + second) * numTags + next] != CompiledModel.NO_TRANSITION) {
+                        nextTags[numNext++] = next;
+                        break;
+                    }
+                }
+            }
+            successors[second] = Arrays.copyOf(nextTags, numNext);
+        }
+    }
+
+    /**
+     * Builds the trigram model for a compiled model from the counts it was trained from
+     */
+    public static TrigramModel build(CompiledModel model, CountTable counts) {
+        String[] tags = new String[model.numTags()];
+        for (int tag = 0; tag < tags.length; tag++) tags[tag] = model.tagName(tag);
+        return new TrigramModel(model, counts.trigramTransitions(tags));
+    }
+
+    /**
+     * Exact Viterbi tagging over the state-pair lattice
+     *
+     * @param sentence sentence with a space between every observation
+     * @param workspace reusable buffers, must not be shared between threads
+     * @param tagDictionary when true a known word is only given the tags it was seen with in training
+     *                      (unless none of them can be reached), as in CompiledModel.tag()
+     * @return tags in sentence form, each followed by a space
+     */
+    public String tag(String sentence, Workspace workspace, boolean tagDictionary) {
+        return tag(sentence, workspace, Integer.MAX_VALUE, Double.POSITIVE_INFINITY, tagDictionary);
+    }
+
+    /**
+     * Viterbi tagging over the state-pair lattice, optionally beam-pruned:
+     * after each observation only the best beamWidth pairs, and only pairs scoring within beamMargin of the best,
+     * are carried forward. Each step then costs about beamWidth times the tags that can follow a pair,
+     * at some risk of losing the best path.
+     *
+     * @param sentence sentence with a space between every observation
+     * @param workspace reusable buffers, must not be shared between threads
+     * @param beamWidth most tag pairs kept after each observation, Integer.MAX_VALUE for no limit
+     * @param beamMargin largest log-score gap to the best pair that is kept, Double.POSITIVE_INFINITY for no limit
+     * @param tagDictionary when true a known word is only given the tags it was seen with in training
+     *                      (unless none of them can be reached), as in CompiledModel.tag()
+     * @return tags in sentence form, each followed by a space
+     */
+    public String tag(String sentence, Workspace workspace, int beamWidth, double beamMargin, boolean tagDictionary) {
+        boolean pruning = beamWidth < numTags * numTags || beamMargin != Double.POSITIVE_INFINITY;
+        Tokenizer tokens = workspace.tokenizer;
+        int length = tokens.tokenize(sentence, true);
+        int numPairs = numTags * numTags;
+        workspace.ensureCapacity(length, numTags);
+
+        // pair (first, second) has index first * numTags + second, only the pairs in the active lists are reachable
+        double[] currScores = workspace.scoresA;
+        double[] nextScores = workspace.scoresB;
+        int[] currActive = workspace.activeA;
+        int[] nextActive = workspace.activeB;
+        Arrays.fill(currScores, 0, numPairs, CompiledModel.NO_TRANSITION);
+        Arrays.fill(nextScores, 0, numPairs, CompiledModel.NO_TRANSITION);
+        int start = model.startState() * numTags + model.startState(); // a sentence starts with two start states
+        currScores[start] = 0.;
+        currActive[0] = start;
+        int numActive = 1;
+        int unknownTokens = 0;
+        long statesExpanded = 0;
+
+        for (int i = 0; i < length; i++) { // loop over each observation in the sentence
+            int entry = model.findObservation(tokens, i);
+            if (entry < 0) unknownTokens++;
+            statesExpanded += numActive;
+            double[] observationScores = model.observationScores(tokens, i, entry, workspace.observationScores);
+            int[] backPointers = workspace.backPointers[i];
+            int numNext;
+            if (!tagDictionary || entry < 0) {
+                numNext = step(currScores, currActive, numActive, nextScores, nextActive, backPointers, observationScores, null, 0);
+            }
+            else {
+                int numCandidates = model.knownTags(entry, workspace.candidates);
+                numNext = step(currScores, currActive, numActive, nextScores, nextActive, backPointers, observationScores,
+                        workspace.candidates, numCandidates);
+                if (numNext == 0) { // none of the word's tags can be reached, fall back to every tag
+                    numNext = step(currScores, currActive, numActive, nextScores, nextActive, backPointers, observationScores, null, 0);
+                }
+            }
+            if (pruning) numNext = prune(nextScores, nextActive, numNext, beamWidth, beamMargin, workspace.sortedScores);
+
+            // clear the pairs just left behind, then swap buffers so next becomes current
+            for (int active = 0; active < numActive; active++) currScores[currActive[active]] = CompiledModel.NO_TRANSITION;
+            double[] tempScores = currScores;
+            currScores = nextScores;
+            nextScores = tempScores;
+            int[] tempActive = currActive;
+            currActive = nextActive;
+            nextActive = tempActive;
+            numActive = numNext;
+        }
+
+        // find the final pair, -1 if no path reached the end of the sentence
+        int finalPair = -1;
+        double bestScore = CompiledModel.NO_TRANSITION;
+        for (int active = 0; active < numActive && length > 0; active++) {
+            int pair = currActive[active];
+            if (currScores[pair] > bestScore) {
+                bestScore = currScores[pair];
+                finalPair = pair;
+            }
+        }
+
+        // trace back: the pair at i is (tag i - 1, tag i) and its backpointer is tag i - 2
+        int[] path = workspace.path;
+        int pair = finalPair;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = pair >= 0 ? pair % numTags : -1;
+            if (pair >= 0) pair = workspace.backPointers[i][pair] * numTags + pair / numTags;
+        }
+        StringBuilder formattedTags = new StringBuilder(length * 4);
+        for (int i = 0; i < length; i++) {
+            formattedTags.append(path[i] >= 0 ? model.tagName(path[i]) : "null").append(' '); // "null" for dead ends, like tag()
+        }
+        workspace.unknownTokens = unknownTokens;
+        workspace.statesExpanded = statesExpanded;
+        return formattedTags.toString();
+    }
+
+    /**
+     * Helper method for tag()
+     * Moves every reachable pair forward by one observation, only into the candidate next tags
+     *
+     * @param candidates ascending tag ids of the next tags to consider, null for every tag that can follow
+     * @param numCandidates number of candidates (ignored when candidates is null)
+     * @return number of pairs reached, listed in nextActive
+     */
+    private int step(double[] currScores, int[] currActive, int numActive, double[] nextScores, int[] nextActive,
+                     int[] backPointers, double[] observationScores, int[] candidates, int numCandidates) {
+        int numNext = 0;
+        for (int active = 0; active < numActive; active++) { // loop over reachable pairs
+            int currPair = currActive[active];
+            double currScore = currScores[currPair];
+            int first = currPair / numTags;
+            int second = currPair % numTags;
+            int row = currPair * numTags;
+            int[] nextTags = candidates == null ? successors[second] : candidates;
+            int numNextTags = candidates == null ? nextTags.length : numCandidates;
+            for (int candidate = 0; candidate < numNextTags; candidate++) { // loop over possible next tags
+                int next = nextTags[candidate];
+                double transitionScore = transitions[row + next];
+                if (transitionScore == CompiledModel.NO_TRANSITION) continue;
+                double nextScore = currScore + transitionScore + observationScores[next];
+                int nextPair = second * numTags + next;
+                if (nextScores[nextPair] == CompiledModel.NO_TRANSITION) nextActive[numNext++] = nextPair; // reached for the first time
+                if (nextScore > nextScores[nextPair]) {
+                    nextScores[nextPair] = nextScore;
+                    backPointers[nextPair] = first;
+                }
+            }
+        }
+        return numNext;
+    }
+
+    /**
+     * Helper method for tag()
+     * Drops every pair outside the beam from the active list and sets its score back to NO_TRANSITION.
+     * The margin is applied first, so the beamWidth-th best score is only looked for among the pairs it leaves.
+     * The pairs kept stay in the order they were reached, so ties are broken the same way as without a beam.
+     *
+     * @param sortedScores scratch array at least numActive long
+     * @return number of pairs kept, listed at the front of active
+     */
+    private static int prune(double[] scores, int[] active, int numActive, int beamWidth, double beamMargin, double[] sortedScores) {
+        double bestScore = CompiledModel.NO_TRANSITION;
+        for (int i = 0; i < numActive; i++) bestScore = Math.max(bestScore, scores[active[i]]);
+        int numKept = keepAbove(scores, active, numActive, bestScore - beamMargin);
+        if (beamWidth < numKept) { // the beamWidth-th best score also sets a threshold
+            for (int i = 0; i < numKept; i++) sortedScores[i] = scores[active[i]];
+            numKept = keepAbove(scores, active, numKept, select(sortedScores, numKept, numKept - beamWidth));
+        }
+        return numKept;
+    }
+
+    /**
+     * Helper method for prune()
+     * Keeps the pairs scoring at least threshold at the front of active, in order, and clears the others
+     *
+     * @return number of pairs kept
+     */
+    private static int keepAbove(double[] scores, int[] active, int numActive, double threshold) {
+        int numKept = 0;
+        for (int i = 0; i < numActive; i++) {
+            int pair = active[i];
+            if (scores[pair] >= threshold) active[numKept++] = pair;
+            else scores[pair] = CompiledModel.NO_TRANSITION;
+        }
+        return numKept;
+    }
+
+    /**
+     * Helper method for prune()
+     * Quickselect: finds the value that would be at index rank if the first length values were sorted ascending,
+     * in time linear in length rather than the n log n of sorting them. The values are reordered.
+     */
+    private static double select(double[] values, int length, int rank) {
+        int low = 0;
+        int high = length - 1;
+        while (low < high) {
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) { // Hoare partition around the pivot
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double temp = values[i];
+                    values[i++] = values[j];
+                    values[j--] = temp;
+                }
+            }
+            if (rank <= j) high = j;
+            else if (rank >= i) low = i;
+            else return values[rank]; // between the two halves, so equal to the pivot
+        }
+        return values[rank];
+    }
+
+    /**
+     * Pair score, backpointer and path buffers reused from one sentence to the next, so tagging allocates
+     * almost nothing. Grown as needed; one per thread.
+     */
+    public static class Workspace {
+        private double[] scoresA = new double[0];
+        private double[] scoresB = new double[0];
+        private int[] activeA = new int[0];
+        private int[] activeB = new int[0];
+        private double[] sortedScores = new double[0]; // scratch for finding the beam's threshold
+        private int[][] backPointers = new int[0][];
+        private double[] observationScores = new double[0];
+        private int[] candidates = new int[0];
+        private int[] path = new int[0];
+        private final Tokenizer tokenizer = new Tokenizer();
+        private int unknownTokens; // counts from the last sentence tagged, for TaggerMetrics
+        private long statesExpanded;
+
+        /**
+         * @return number of observations in the last sentence tagged with this workspace
+         */
+        int numTokens() {
+            return tokenizer.numTokens();
+        }
+
+        /**
+         * @return observations of the last sentence that weren't in the vocabulary
+         */
+        int unknownTokens() {
+            return unknownTokens;
+        }
+
+        /**
+         * @return reachable tag pairs extended while tagging the last sentence
+         */
+        long statesExpanded() {
+            return statesExpanded;
+        }
+
+        void ensureCapacity(int length, int numTags) {
+            int numPairs = numTags * numTags;
+            if (scoresA.length < numPairs) {
+                scoresA = new double[numPairs];
+                scoresB = new double[numPairs];
+                activeA = new int[numPairs];
+                activeB = new int[numPairs];
+                sortedScores = new double[numPairs];
+                observationScores = new double[numTags];
+                candidates = new int[numTags];
+                backPointers = new int[0][]; // rows are too short now, rebuild below
+            }
+            if (backPointers.length < length) {
+                int rows = Math.max(length, backPointers.length * 2);
+                int[][] grown = Arrays.copyOf(backPointers, rows);
+                for (int i = backPointers.length; i < rows; i++) grown[i] = new int[scoresA.length];
+                backPointers = grown;
+                path = new int[rows];
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Observation scores for words never seen in training, from their suffix and shape (as in the TnT tagger, Brants 2000).
+ * Tag counts of rare training words are kept for every suffix of up to MAX_SUFFIX letters, separately for each shape
+ * (has a digit, has a hyphen, no letters or digits, plain). An unknown word's tag distribution starts from the tag
+ * distribution of all training tokens and is refined by its shape and then each longer suffix that was seen
+ * (successive abstraction). Its scores are unseenObservationScore + ln(P(tag | suffix) / P(tag)), so the tags that
+ * fit the suffix gain against the flat score the original tagger gives every tag.
+ * Computed distributions go into a bounded LRU cache, so a repeated unknown word costs one lookup after the first.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class UnknownWordModel {
+    static final int MAX_SUFFIX = 5; // longest suffix counted
+    static final int RARE_COUNT = 10; // words seen at most this many times count towards the suffixes
+    static final int CACHE_SEGMENTS = 16; // the cache is split so tagging threads rarely wait for each other (fewer for tiny caches)
+
+    private final int numTags;
+    private final Map<String, int[]> suffixCounts; // shape + suffix -> (tag id, count) pairs, shape alone for the empty suffix
+    private final double[] tagPrior; // P(tag) over every training token
+    private final double theta; // weight of the shorter suffix when smoothing a longer one
+    private final double unseenObservationScore;
+    private final List<LinkedHashMap<String, double[]>> cacheSegments = new ArrayList<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile TaggerMetrics metrics; // told about every cache lookup, null when metrics are off
+
+    private UnknownWordModel(int numTags, Map<String, int[]> suffixCounts, double[] tagPrior,
+                             double unseenObservationScore, int cacheSize) {
+        this.numTags = numTags;
+        this.suffixCounts = suffixCounts;
+        this.tagPrior = tagPrior;
+        this.unseenObservationScore = unseenObservationScore;
+
+        // theta is the standard deviation of the tag prior
+        double mean = 1. / numTags;
+        double variance = 0;
+        for (double probability : tagPrior) variance += (probability - mean) * (probability - mean);
+        theta = Math.sqrt(variance / Math.max(numTags - 1, 1));
+
+        // segment sizes add up to exactly cacheSize, with no more segments than words so none is empty
+        int numSegments = Math.max(1, Math.min(CACHE_SEGMENTS, cacheSize));
+        for (int segment = 0; segment < numSegments; segment++) {
+            int segmentSize = cacheSize / numSegments + (segment < cacheSize % numSegments ? 1 : 0);
+            cacheSegments.add(new LinkedHashMap<>(16, 0.75f, true) { // access order, so the eldest is least recently used
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+                    if (size() <= segmentSize) return false;
+                    evictions.incrementAndGet();
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts the suffixes of the rare words in a tagger's training counts
+     *
+     * @param model compiled model giving the tag ids
+     * @param counts training counts the model was built from
+     * @param unseenObservationScore score the original tagger gives unseen observations
+     * @param cacheSize most unknown words whose scores are kept
+     * @return the unknown-word model, with an empty cache
+     */
+    public static UnknownWordModel build(CompiledModel model, CountTable counts, double unseenObservationScore, int cacheSize) {
+        int numTags = model.numTags();
+        Map<String, Integer> tagIds = new HashMap<>();
+        for (int tag = 0; tag < numTags; tag++) tagIds.put(model.tagName(tag), tag);
+
+        double[] tagPrior = new double[numTags];
+        Map<String, int[]> suffixCounts = new HashMap<>();
+        counts.forEachWord((word, tags, wordCounts) -> {
+            int total = 0;
+            for (int i = 0; i < tags.length; i++) {
+                tagPrior[tagIds.get(tags[i])] += wordCounts[i];
+                total += wordCounts[i];
+            }
+            if (total > RARE_COUNT) return;
+            char shape = shape(word);
+            for (int length = 0; length <= Math.min(MAX_SUFFIX, word.length()); length++) {
+                String key = shape + word.substring(word.length() - length);
+                for (int i = 0; i < tags.length; i++) addCount(suffixCounts, key, tagIds.get(tags[i]), wordCounts[i]);
+            }
+        });
+        double tokens = 0;
+        for (double count : tagPrior) tokens += count;
+        for (int tag = 0; tag < numTags; tag++) tagPrior[tag] /= Math.max(tokens, 1);
+        return new UnknownWordModel(numTags, suffixCounts, tagPrior, unseenObservationScore, cacheSize);
+    }
+
+    /**
+     * Helper method for build()
+     * Adds to a tag's count in a (tag id, count) pair list
+     */
+    private static void addCount(Map<String, int[]> suffixCounts, String key, int tagId, int count) {
+        int[] pairs = suffixCounts.get(key);
+        if (pairs != null) {
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (pairs[i] == tagId) {
+                    pairs[i + 1] += count;
+                    return;
+                }
+            }
+        }
+        pairs = pairs == null ? new int[2] : Arrays.copyOf(pairs, pairs.length + 2);
+        pairs[pairs.length - 2] = tagId;
+        pairs[pairs.length - 1] = count;
+        suffixCounts.put(key, pairs);
+    }
+
+    /**
+     * Helper method for build() and scores()
+     * Words are lowercased before tagging, so the shape only looks at digits, hyphens and letters
+     *
+     * @return 'd' if the word has a digit, '-' if it has a hyphen, 'p' if it has no letters or digits, otherwise 'a'
+     */
+    private static char shape(String word) {
+        boolean letter = false;
+        boolean hyphen = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isDigit(c)) return 'd';
+            if (c == '-') hyphen = true;
+            else if (Character.isLetter(c)) letter = true;
+        }
+        if (hyphen) return '-';
+        return letter ? 'a' : 'p';
+    }
+
+    /**
+     * @param metrics told about every cache lookup from now on, null to stop
+     */
+    void setMetrics(TaggerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param word lowercased observation that isn't in the vocabulary
+     * @return observation score of the word for every tag id, shared with the cache so must not be changed
+     */
+    public double[] scores(String word) {
+        Map<String, double[]> segment = cacheSegments.get((word.hashCode() & 0x7fffffff) % cacheSegments.size());
+        double[] scores;
+        synchronized (segment) {
+            scores = segment.get(word);
+        }
+        TaggerMetrics metrics = this.metrics;
+        if (metrics != null) metrics.cacheLookup("unknown words", scores != null);
+        if (scores != null) {
+            hits.incrementAndGet();
+            return scores;
+        }
+        misses.incrementAndGet();
+        scores = computeScores(word);
+        synchronized (segment) {
+            segment.put(word, scores);
+        }
+        return scores;
+    }
+
+    /**
+     * Helper method for scores()
+     * Successive abstraction from the tag prior through the word's shape and each longer suffix
+     */
+    private double[] computeScores(String word) {
+        double[] probabilities = tagPrior.clone();
+        char shape = shape(word);
+        for (int length = 0; length <= Math.min(MAX_SUFFIX, word.length()); length++) {
+            int[] pairs = suffixCounts.get(shape + word.substring(word.length() - length));
+            if (pairs == null) break; // no rare word had this suffix, so none had a longer one
+            double total = 0;
+            for (int i = 1; i < pairs.length; i += 2) total += pairs[i];
+            for (int tag = 0; tag < numTags; tag++) probabilities[tag] *= theta / (1 + theta);
+            for (int i = 0; i < pairs.length; i += 2) probabilities[pairs[i]] += pairs[i + 1] / total / (1 + theta);
+        }
+        double[] scores = new double[numTags];
+        for (int tag = 0; tag < numTags; tag++) {
+            scores[tag] = tagPrior[tag] == 0 ? CompiledModel.NO_TRANSITION
+                    : unseenObservationScore + Math.log(probabilities[tag] / tagPrior[tag]);
+        }
+        return scores;
+    }
+
+    /**
+     * @return number of unknown-word lookups answered from the cache
+     */
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of unknown-word lookups that had to compute the scores
+     */
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of words dropped from the cache to make room
+     */
+    public long getCacheEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return fraction of unknown-word lookups answered from the cache, 0 before any lookups
+     */
+    public double getCacheHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.*;
+
+/**
+ * Every distinct word of a model stored once, in a sorted array, so a word can be known by an integer id.
+ * Looking up a word is a binary search, which needs no hashing and no per-word objects beyond the Strings themselves.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class Vocabulary {
+    private final String[] words; // sorted, id -> word
+
+    /**
+     * @param words distinct words, in any order
+     */
+    public Vocabulary(Collection<String> words) {
+        this.words = words.toArray(new String[0]);
+        Arrays.sort(this.words);
+    }
+
+    /**
+     * @return id of the word, -1 if it isn't in the vocabulary
+     */
+    public int id(String word) {
+        int id = Arrays.binarySearch(words, word);
+        return id >= 0 ? id : -1;
+    }
+
+    /**
+     * Looks a word up straight from a char buffer (such as a Tokenizer's), without making a String
+     *
+     * @return id of the word chars[start, start + length), -1 if it isn't in the vocabulary
+     */
+    public int id(char[] chars, int start, int length) {
+        int low = 0;
+        int high = words.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(words[middle], chars, start, length);
+            if (comparison == 0) return middle;
+            else if (comparison > 0) high = middle - 1;
+            else low = middle + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Helper method for id()
+     * Compares a word against chars the same way String.compareTo() does
+     */
+    private static int compare(String word, char[] chars, int start, int length) {
+        int shorter = Math.min(word.length(), length);
+        for (int i = 0; i < shorter; i++) {
+            if (word.charAt(i) != chars[start + i]) return word.charAt(i) - chars[start + i];
+        }
+        return word.length() - length;
+    }
+
+    public String word(int id) {
+        return words[id];
+    }
+
+    public int size() {
+        return words.length;
+    }
+}
\ No newline at end of file
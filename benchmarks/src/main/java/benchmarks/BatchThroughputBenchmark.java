@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import postagger.POSTagger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of tagging the whole brown-test file with tagBatch(), reported per sentence.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchThroughputBenchmark {
+    static final int BROWN_TEST_SENTENCES = 2390;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private POSTagger tagger;
+    private List<String> sentences;
+
+    @Setup
+    public void setup() throws IOException {
+        tagger = new POSTagger();
+        tagger.fileTraining(BenchmarkData.path("brown-train-sentences.txt"), BenchmarkData.path("brown-train-tags.txt"));
+        tagger.setCompiled(compiled);
+        tagger.setBatchParallelism(Runtime.getRuntime().availableProcessors());
+        sentences = BenchmarkData.readLines("brown-test-sentences.txt");
+        if (sentences.size() != BROWN_TEST_SENTENCES) throw new IllegalStateException("unexpected brown-test size " + sentences.size());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BROWN_TEST_SENTENCES)
+    public List<String> tagBatch() {
+        return tagger.tagBatch(sentences);
+    }
+}
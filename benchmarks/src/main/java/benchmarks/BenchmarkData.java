@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Locates and reads the data files shared by the benchmarks.
+ * Files are read from the directory in the postagger.data system property, the repository root by default.
+ */
+public class BenchmarkData {
+    static final String DATA_DIR = System.getProperty("postagger.data", "..");
+
+    /**
+     * @param fileName name of a file in the data directory, e.g. "brown-test-sentences.txt"
+     * @return path of that file
+     */
+    static String path(String fileName) {
+        return Paths.get(DATA_DIR, fileName).toString();
+    }
+
+    static List<String> readLines(String fileName) throws IOException {
+        return Files.readAllLines(Paths.get(path(fileName)));
+    }
+
+    /**
+     * Picks out the sentences whose number of observations falls in a bucket
+     *
+     * @param sentences sentences with a space between every observation
+     * @param bucket "min-max" observations, inclusive, e.g. "11-20"
+     * @return the sentences in the bucket, in file order
+     */
+    static List<String> lengthBucket(List<String> sentences, String bucket) {
+        String[] bounds = bucket.split("-");
+        int min = Integer.parseInt(bounds[0]);
+        int max = Integer.parseInt(bounds[1]);
+        List<String> inBucket = new ArrayList<>();
+        for (String sentence : sentences) {
+            int length = sentence.split(" ").length;
+            if (length >= min && length <= max) inBucket.add(sentence);
+        }
+        return inBucket;
+    }
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import postagger.POSTagger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a new tagger to its first tagged sentence, loading a saved brown model instead of retraining.
+ * Measured one load at a time, the way a service starts: loading in a tight loop maps the file faster
+ * than the garbage collector releases old mappings.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(3)
+@State(Scope.Benchmark)
+public class ModelLoadBenchmark {
+    private String modelFileName;
+
+    @Setup
+    public void setup() throws IOException {
+        File modelFile = File.createTempFile("brown-model", ".bin");
+        modelFile.deleteOnExit();
+        modelFileName = modelFile.getPath();
+        POSTagger tagger = new POSTagger();
+        tagger.fileTraining(BenchmarkData.path("brown-train-sentences.txt"), BenchmarkData.path("brown-train-tags.txt"));
+        tagger.saveModel(modelFileName);
+    }
+
+    @Benchmark
+    public String loadAndTag() throws IOException {
+        POSTagger tagger = new POSTagger();
+        tagger.setCompiled(true);
+        tagger.loadModel(modelFileName);
+        return tagger.tagViterbi("the jury said it .");
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import postagger.POSTagger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of tagging one brown-test sentence with tagViterbi(), by sentence length.
+ * Run with -prof gc to see the allocation rate per sentence (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TaggingLatencyBenchmark {
+    @Param({"1-10", "11-20", "21-40", "41-1000"})
+    public String lengthBucket;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private POSTagger tagger;
+    private String[] sentences;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        tagger = new POSTagger();
+        tagger.fileTraining(BenchmarkData.path("brown-train-sentences.txt"), BenchmarkData.path("brown-train-tags.txt"));
+        tagger.setCompiled(compiled);
+        List<String> bucket = BenchmarkData.lengthBucket(BenchmarkData.readLines("brown-test-sentences.txt"), lengthBucket);
+        sentences = bucket.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public String tagViterbi() {
+        String sentence = sentences[next];
+        next = (next + 1) % sentences.length;
+        return tagger.tagViterbi(sentence);
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import postagger.POSTagger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to train a tagger from files, single-threaded and sharded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TrainingBenchmark {
+    @Param({"simple", "brown"})
+    public String setName;
+
+    private POSTagger tagger;
+    private String sentencesFileName;
+    private String tagsFileName;
+    private int shards;
+
+    @Setup
+    public void setup() {
+        tagger = new POSTagger();
+        sentencesFileName = BenchmarkData.path(setName + "-train-sentences.txt");
+        tagsFileName = BenchmarkData.path(setName + "-train-tags.txt");
+        shards = Runtime.getRuntime().availableProcessors();
+        tagger.setBatchParallelism(shards);
+    }
+
+    @Benchmark
+    public Object fileTraining() {
+        tagger.fileTraining(sentencesFileName, tagsFileName);
+        return tagger.getModel();
+    }
+
+    @Benchmark
+    public Object shardedFileTraining() {
+        tagger.fileTraining(sentencesFileName, tagsFileName, shards);
+        return tagger.getModel();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import postagger.POSTagger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of tagging brown-test one sentence at a time with the scalar and the SIMD dense step (see MaxPlusKernel),
+ * reported per sentence. Forks with the incubating vector module so the SIMD kernel can load.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class VectorKernelBenchmark {
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    private POSTagger tagger;
+    private List<String> sentences;
+
+    @Setup
+    public void setup() throws IOException {
+        tagger = new POSTagger();
+        tagger.setCompiled(true); // the kernel only runs compiled steps
+        tagger.fileTraining(BenchmarkData.path("brown-train-sentences.txt"), BenchmarkData.path("brown-train-tags.txt"));
+        tagger.setVectorized(vectorized);
+        if (tagger.isVectorized() != vectorized) throw new IllegalStateException("vector kernel didn't load");
+        sentences = BenchmarkData.readLines("brown-test-sentences.txt");
+        if (sentences.size() != BatchThroughputBenchmark.BROWN_TEST_SENTENCES) {
+            throw new IllegalStateException("unexpected brown-test size " + sentences.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BatchThroughputBenchmark.BROWN_TEST_SENTENCES)
+    public int tagViterbi() {
+        int length = 0;
+        for (String sentence : sentences) length += tagger.tagViterbi(sentence).length();
+        return length;
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.*;
+import jdk.incubator.vector.*;
+
+/**
+ * SIMD MaxPlusKernel on the JDK Vector API, which is still incubating in JDK 17.
+ * It sits outside the main sources so they build with plain javac. To use it, compile and run with the module added:
+ *   javac --add-modules jdk.incubator.vector -d <classes> *.java vector/VectorMaxPlus.java
+ *   java --add-modules jdk.incubator.vector -cp <classes> ...
+ * Next tags are split into blocks of one vector's lanes. The transition matrix is stored tag-major within each block:
+ * block b holds every current tag's transitions into the lanes of b, one after another, padded with NO_TRANSITION past the
+ * last tag. The best scores and backpointers of a block stay in registers while every current tag is folded in.
+ * Ties keep the earlier (lower) current tag, like the scalar loop, so the output is bit-identical.
+ *
+ * @author Connor Hay, Dartmouth CS 10, Spring 2021
+ */
+
+public class VectorMaxPlus implements MaxPlusKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = DOUBLES.length();
+
+    public VectorMaxPlus() {
+        if (LANES < 2) throw new UnsupportedOperationException("no SIMD registers wider than one double");
+    }
+
+    public int paddedLength(int numTags) {
+        return (numTags + LANES - 1) / LANES * LANES;
+    }
+
+    public double[] layout(double[][] transitions, int numTags) {
+        int numBlocks = paddedLength(numTags) / LANES;
+        double[] layout = new double[numBlocks * numTags * LANES];
+        Arrays.fill(layout, CompiledModel.NO_TRANSITION);
+        for (int block = 0; block < numBlocks; block++) {
+            for (int from = 0; from < numTags; from++) {
+                for (int lane = 0; lane < LANES && block * LANES + lane < numTags; lane++) {
+                    layout[(block * numTags + from) * LANES + lane] = transitions[from][block * LANES + lane];
+                }
+            }
+        }
+        return layout;
+    }
+
+    public int step(double[] layout, int numTags, double[] currScores, double[] nextScores, int[] backPointers, double[] observationScores,
+                    double[] scratch) {
+        // reached current tags are listed once, in the backpointers as they aren't written until the end, and only they
+        // are folded into each block, so a step after beam pruning costs about beamWidth rows instead of numTags
+        int[] reachedStates = backPointers;
+        int expanded = 0;
+        for (int currState = 0; currState < numTags; currState++) {
+            if (currScores[currState] != CompiledModel.NO_TRANSITION) reachedStates[expanded++] = currState;
+        }
+        DoubleVector unreached = DoubleVector.broadcast(DOUBLES, CompiledModel.NO_TRANSITION);
+        boolean reached = false;
+        for (int next = 0, block = 0; next < numTags; next += LANES, block++) {
+            // observation scores aren't padded, so the last block only loads the lanes that are there
+            DoubleVector observations = next + LANES <= numTags ? DoubleVector.fromArray(DOUBLES, observationScores, next)
+                    : DoubleVector.fromArray(DOUBLES, observationScores, next, DOUBLES.indexInRange(next, numTags));
+            DoubleVector best = unreached;
+            DoubleVector bestStates = unreached; // current tag ids are small enough to be exact as doubles
+            int blockStart = block * numTags * LANES;
+            for (int i = 0; i < expanded; i++) { // ascending, so ties keep the lower current tag
+                int currState = reachedStates[i];
+                DoubleVector scores = DoubleVector.fromArray(DOUBLES, layout, blockStart + currState * LANES).add(currScores[currState]).add(observations);
+                VectorMask<Double> better = scores.compare(VectorOperators.GT, best);
+                best = best.blend(scores, better);
+                bestStates = bestStates.blend(DoubleVector.broadcast(DOUBLES, (double) currState), better);
+            }
+            best.intoArray(nextScores, next);
+            bestStates.intoArray(scratch, next);
+            reached |= best.compare(VectorOperators.GT, unreached).anyTrue();
+        }
+        // converted one at a time, a double to int vector conversion isn't compiled to SIMD on JDK 17
+        // (backpointers of unreached states are never traced back, so they're just written over)
+        for (int nextState = 0; nextState < numTags; nextState++) backPointers[nextState] = (int) scratch[nextState];
+        return reached ? expanded : 0;
+    }
+}
\ No newline at end of file